@@ -0,0 +1,72 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Sample files for benchmarks: the test resource by default, or every supported
+// image in the folder given by the "files" parameter (e.g. RAWs with large maker notes)
+final class BenchmarkFiles {
+
+    private static final String TEST_RESOURCE = "IMG20251023104114_res.jpg";
+    private static final int JPEG_APP1 = 0xFFE1;
+    private static final byte[] EXIF_PREFIX = {'E', 'x', 'i', 'f', 0, 0};
+
+    private BenchmarkFiles() {
+    }
+
+    static List<Path> load(String folder) throws IOException, URISyntaxException {
+        if (folder == null || folder.isBlank()) {
+            return List.of(Path.of(Objects.requireNonNull(
+                    BenchmarkFiles.class.getClassLoader().getResource(TEST_RESOURCE)
+            ).toURI()));
+        }
+
+        try (Stream<Path> stream = Files.list(Path.of(folder))) {
+            return stream.filter(Files::isRegularFile)
+                    .filter(p -> {
+                        String name = p.getFileName().toString().toLowerCase();
+                        int dot = name.lastIndexOf('.');
+                        return dot >= 0 && Constants.SUPPORTED_EXTENSIONS.contains(name.substring(dot));
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // The test photo as `format`: "jpg" is a copy, "tif" is its EXIF block on its own,
+    // which is a metadata-only TIFF file
+    static Path sample(String format, Path folder) throws IOException, URISyntaxException {
+        Path jpeg = load("").get(0);
+        Path target = folder.resolve("sample." + format);
+        switch (format) {
+            case "jpg" -> Files.copy(jpeg, target);
+            case "tif" -> Files.write(target, exifBlock(Files.readAllBytes(jpeg)));
+            default -> throw new IllegalArgumentException("Unsupported sample format: " + format);
+        }
+        return target;
+    }
+
+    private static byte[] exifBlock(byte[] jpeg) {
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        buffer.position(2); // SOI
+        while (buffer.remaining() >= 4) {
+            int marker = buffer.getShort() & 0xFFFF;
+            int length = buffer.getShort() & 0xFFFF;
+            int start = buffer.position();
+            if (marker == JPEG_APP1 && length > EXIF_PREFIX.length + 2
+                    && Arrays.equals(jpeg, start, start + EXIF_PREFIX.length, EXIF_PREFIX, 0, EXIF_PREFIX.length)) {
+                return Arrays.copyOfRange(jpeg, start + EXIF_PREFIX.length, start + length - 2);
+            }
+            buffer.position(start + length - 2);
+        }
+        throw new IllegalStateException("No EXIF segment in the test photo");
+    }
+}
@@ -0,0 +1,19 @@
+package com.samfort.photorenamer;
+
+// Discards progress so benchmarks measure the engine only
+final class BenchmarkListener implements ProgressListener {
+
+    static final BenchmarkListener INSTANCE = new BenchmarkListener();
+
+    @Override
+    public void onStart(int totalFiles) {
+    }
+
+    @Override
+    public void onProgress(RenameResult result) {
+    }
+
+    @Override
+    public void onComplete(int renamed, int skipped, int errors) {
+    }
+}
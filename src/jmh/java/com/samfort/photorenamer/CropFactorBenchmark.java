@@ -0,0 +1,35 @@
+package com.samfort.photorenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Crop factor lookups for a shoot mixing a few bodies, including one without a factor
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CropFactorBenchmark {
+
+    private static final String[] MODELS = {
+            "iPhone 16 Pro", "Galaxy S24 Ultra", "OPPO Find X9 Pro", "Canon EOS R5", "Pixel 9 Pro"
+    };
+
+    @Benchmark
+    public void memoized(Blackhole bh) {
+        for (String model : MODELS) {
+            bh.consume(CropFactorDatabase.getCropFactor(model));
+        }
+    }
+}
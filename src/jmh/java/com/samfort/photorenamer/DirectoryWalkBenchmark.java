@@ -0,0 +1,98 @@
+package com.samfort.photorenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Listing a tree of empty files: the old Files.walk + isRegularFile + lower-cased
+// extension lookup against DirectoryWalker. "wide" is 200 folders of 50 files one level
+// down, "deep" 1093 folders of 10 files, 6 levels of 3 subfolders each. A third of the
+// files are .xmp sidecars that must be filtered out. Score is per walk of the tree.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryWalkBenchmark {
+
+    @Param({"wide", "deep"})
+    public String shape;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("bench-walk");
+        if (shape.equals("wide")) {
+            createTree(root, 1, 200, 50);
+        } else {
+            createTree(root, 6, 3, 10);
+        }
+    }
+
+    private static void createTree(Path folder, int depth, int fanOut, int files) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Files.createFile(folder.resolve(i % 3 == 2 ? "IMG_" + i + ".xmp" : "IMG_" + i + ".JPG"));
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            createTree(Files.createDirectory(folder.resolve("d" + i)), depth - 1, fanOut, files);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long filesWalk() throws IOException {
+        try (Stream<Path> files = Files.walk(root, Integer.MAX_VALUE)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(DirectoryWalkBenchmark::legacyIsSupported)
+                    .count();
+        }
+    }
+
+    @Benchmark
+    public long parallelWalk() {
+        LongAdder count = new LongAdder();
+        DirectoryWalker.walk(root, Integer.MAX_VALUE, (file, attributes) -> {
+            count.increment();
+            return true;
+        });
+        return count.sum();
+    }
+
+    private static boolean legacyIsSupported(Path path) {
+        String filename = path.toString().toLowerCase();
+        int dotIndex = filename.lastIndexOf('.');
+        if (dotIndex < 0) {
+            return false;
+        }
+        return Constants.SUPPORTED_EXTENSIONS.contains(filename.substring(dotIndex));
+    }
+}
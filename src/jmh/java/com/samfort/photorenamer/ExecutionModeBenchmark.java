@@ -0,0 +1,90 @@
+package com.samfort.photorenamer;
+
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Dry run over a folder where every metadata read waits `latencyMs`, as on NFS/SMB.
+// Score is files per second for each execution mode.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final int FILES = 256;
+
+    @Param({"FIXED_POOL", "VIRTUAL_THREADS"})
+    public ExecutionMode mode;
+
+    @Param("20")
+    public int latencyMs;
+
+    private Path folder;
+    private FileRenameService service;
+    private RenameConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("bench-exec");
+        Path source = BenchmarkFiles.load("").get(0);
+        for (int i = 0; i < FILES; i++) {
+            Files.copy(source, folder.resolve("IMG_" + i + ".jpg"));
+        }
+
+        service = new FileRenameService(new ExifMetadataService() {
+            @Override
+            Metadata readMetadata(Path file) throws ImageProcessingException, IOException {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.readMetadata(file);
+            }
+        });
+
+        config = RenameConfig.builder()
+                .targetFolder(folder)
+                .dryRun(true)
+                .executionMode(mode)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int renameDryRun() {
+        service.renamePhotos(config, BenchmarkListener.INSTANCE);
+        return service.getStatistics().getProcessed();
+    }
+}
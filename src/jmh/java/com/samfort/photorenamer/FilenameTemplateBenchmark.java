@@ -0,0 +1,71 @@
+package com.samfort.photorenamer;
+
+import com.drew.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Regex-based formatter (before templates) vs. the compiled default template
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameTemplateBenchmark {
+
+    @Param("")
+    public String files;
+
+    private final LegacyFilenameFormatter legacy = new LegacyFilenameFormatter();
+    private List<LegacyMetadata> legacyMetadata;
+    private List<PhotoMetadata> metadata;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExifMetadataService service = new ExifMetadataService();
+        legacyMetadata = new ArrayList<>();
+        metadata = new ArrayList<>();
+        for (Path file : BenchmarkFiles.load(files)) {
+            Metadata raw = service.readMetadata(file);
+            LegacyMetadata old = LegacyMetadata.read(raw);
+            PhotoMetadata m = ExifMetadataService.toPhotoMetadata(raw);
+            if (old.captureTime() == null) {
+                continue;
+            }
+            if (!legacy.formatFilename(old).equals(FilenameTemplate.DEFAULT.render(m))) {
+                throw new IllegalStateException("Template output differs for " + file);
+            }
+            legacyMetadata.add(old);
+            metadata.add(m);
+        }
+    }
+
+    @Benchmark
+    public void legacyFormatter(Blackhole bh) {
+        for (LegacyMetadata m : legacyMetadata) {
+            bh.consume(legacy.formatFilename(m));
+        }
+    }
+
+    @Benchmark
+    public void compiledTemplate(Blackhole bh) {
+        for (PhotoMetadata m : metadata) {
+            bh.consume(FilenameTemplate.DEFAULT.render(m));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.samfort.photorenamer;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+// Metadata as it was kept before the typed record: every value is the library's
+// description string, parsed again by LegacyFilenameFormatter
+public record LegacyMetadata(ZonedDateTime captureTime, String model, String focal,
+                             String aperture, String shutter, String iso) {
+
+    public static LegacyMetadata read(Metadata metadata) {
+        String model = getString(metadata, ExifIFD0Directory.class, ExifIFD0Directory.TAG_MODEL);
+
+        String focal = TagResolver.getDescription(metadata, TagResolver.Field.FOCAL_LENGTH_35);
+        if (focal != null) {
+            focal = focal.replaceAll("\\s+", "_");
+        } else {
+            focal = estimateFocal(getString(metadata, ExifSubIFDDirectory.class, ExifSubIFDDirectory.TAG_FOCAL_LENGTH), model);
+        }
+
+        return new LegacyMetadata(
+                captureTime(metadata),
+                model,
+                focal,
+                TagResolver.getDescription(metadata, TagResolver.Field.APERTURE),
+                TagResolver.getDescription(metadata, TagResolver.Field.EXPOSURE_TIME),
+                TagResolver.getDescription(metadata, TagResolver.Field.ISO));
+    }
+
+    private static ZonedDateTime captureTime(Metadata metadata) {
+        Date date = null;
+        var subDir = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        if (subDir != null) {
+            date = subDir.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
+        }
+        if (date == null) {
+            var ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (ifd0 != null) {
+                date = ifd0.getDate(ExifIFD0Directory.TAG_DATETIME);
+            }
+        }
+        return date == null ? null : date.toInstant().atZone(ZoneId.of("UTC"));
+    }
+
+    private static String getString(Metadata metadata, Class<? extends Directory> dirClass, int tagId) {
+        var dir = metadata.getFirstDirectoryOfType(dirClass);
+        return (dir != null && dir.containsTag(tagId)) ? dir.getString(tagId) : null;
+    }
+
+    private static String estimateFocal(String focal, String model) {
+        if (focal == null || model == null) return null;
+
+        Double cropFactor = CropFactorDatabase.getCropFactor(model);
+        if (cropFactor == null) return null;
+        try {
+            return String.valueOf((int) Math.round(Double.parseDouble(focal) * cropFactor));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.samfort.photorenamer;
+
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+// Dry run over a simulated spinning disk: one head, reads are served one at a time and
+// each costs a seek that grows with the inode distance from the previous read, up to
+// FULL_SEEK_MICROS. Files are written round-robin across the folders, as a card import
+// of several days would. Score is files per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class LocalityBenchmark {
+
+    private static final int FOLDERS = 20;
+    private static final int FILES = 400;
+    private static final long TRACK_MICROS = 50;
+    private static final long FULL_SEEK_MICROS = 6000;
+    // Inode distance of a full seek
+    private static final long FULL_SEEK_DISTANCE = 1000;
+
+    @Param({"FIXED_POOL", "LOCALITY"})
+    public ExecutionMode mode;
+
+    private Path folder;
+    private FileRenameService service;
+    private RenameConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("bench-locality");
+        Path source = BenchmarkFiles.load("").get(0);
+        Map<Path, Long> inodes = new HashMap<>();
+        for (int i = 0; i < FILES; i++) {
+            Path subfolder = Files.createDirectories(folder.resolve("day" + i % FOLDERS));
+            Path file = Files.copy(source, subfolder.resolve("IMG_" + i + ".jpg"));
+            inodes.put(file, (Long) Files.getAttribute(file, "unix:ino"));
+        }
+
+        Disk disk = new Disk();
+        service = new FileRenameService(new ExifMetadataService() {
+            @Override
+            Metadata readMetadata(Path file) throws ImageProcessingException, IOException {
+                disk.seek(inodes.getOrDefault(file, 0L));
+                return super.readMetadata(file);
+            }
+        });
+
+        config = RenameConfig.builder()
+                .targetFolder(folder)
+                .recursive(true)
+                .dryRun(true)
+                .executionMode(mode)
+                .build();
+    }
+
+    private static class Disk {
+        private long head;
+
+        synchronized void seek(long position) {
+            long distance = Math.min(Math.abs(position - head), FULL_SEEK_DISTANCE);
+            long micros = TRACK_MICROS + FULL_SEEK_MICROS * distance / FULL_SEEK_DISTANCE;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+            head = position;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int renameDryRun() {
+        service.renamePhotos(config, BenchmarkListener.INSTANCE);
+        return service.getStatistics().getRenamed();
+    }
+}
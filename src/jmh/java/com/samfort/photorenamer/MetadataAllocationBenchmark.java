@@ -0,0 +1,63 @@
+package com.samfort.photorenamer;
+
+import com.drew.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsed library metadata to filename: description strings parsed again by the old
+// formatter vs. the typed record. Run with -prof gc to compare bytes per file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataAllocationBenchmark {
+
+    @Param("")
+    public String files;
+
+    private final LegacyFilenameFormatter legacy = new LegacyFilenameFormatter();
+    private List<Metadata> metadata;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExifMetadataService service = new ExifMetadataService();
+        metadata = new ArrayList<>();
+        for (Path file : BenchmarkFiles.load(files)) {
+            Metadata raw = service.readMetadata(file);
+            if (ExifMetadataService.toPhotoMetadata(raw).hasCaptureTime()) {
+                metadata.add(raw);
+            }
+        }
+    }
+
+    @Benchmark
+    public void descriptionStrings(Blackhole bh) {
+        for (Metadata m : metadata) {
+            bh.consume(legacy.formatFilename(LegacyMetadata.read(m)));
+        }
+    }
+
+    @Benchmark
+    public void typedRecord(Blackhole bh) {
+        for (Metadata m : metadata) {
+            bh.consume(FilenameTemplate.DEFAULT.render(ExifMetadataService.toPhotoMetadata(m)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.samfort.photorenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Target names for a burst of `burst` files shot in the same second (same base name),
+// which is where collision handling used to probe the disk once per taken suffix.
+// Score is per burst; each invocation starts with a fresh registry of an empty folder.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameReservationBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int burst;
+
+    private Path folder;
+    private Path[] sources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("bench-names");
+        sources = new Path[burst];
+        for (int i = 0; i < burst; i++) {
+            sources[i] = folder.resolve("IMG_" + i + ".jpg");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(folder);
+    }
+
+    @Benchmark
+    public void reserveBurst(Blackhole bh) throws IOException {
+        NameRegistry names = new NameRegistry();
+        for (Path source : sources) {
+            bh.consume(names.reserve(source, "20251023_104114_OPPO Find X9 Pro", ".jpg"));
+        }
+    }
+}
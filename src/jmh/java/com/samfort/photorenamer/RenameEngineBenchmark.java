@@ -0,0 +1,81 @@
+package com.samfort.photorenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// End-to-end dry run (walk, read, format, reserve) over a local folder of copies of
+// the test photo spread over a few subfolders. Score is files per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class RenameEngineBenchmark {
+
+    private static final int FILES = 1000;
+    private static final int FOLDERS = 10;
+
+    @Param({"LIBRARY", "FAST"})
+    public ExtractionMode extraction;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private Path folder;
+    private FileRenameService service;
+    private RenameConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("bench-engine");
+        Path source = BenchmarkFiles.load("").get(0);
+        for (int i = 0; i < FILES; i++) {
+            Path subfolder = Files.createDirectories(folder.resolve("day" + i % FOLDERS));
+            Files.copy(source, subfolder.resolve("IMG_" + i + ".jpg"));
+        }
+
+        service = new FileRenameService();
+        config = RenameConfig.builder()
+                .targetFolder(folder)
+                .recursive(true)
+                .dryRun(true)
+                .streaming(streaming)
+                .extractionMode(extraction)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int renameDryRun() {
+        service.renamePhotos(config, BenchmarkListener.INSTANCE);
+        return service.getStatistics().getRenamed();
+    }
+}
@@ -0,0 +1,81 @@
+package com.samfort.photorenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Dry run over a folder that was already renamed, as a rerun over a processed archive:
+// every name fits the template, so with skipNamed no file is opened at all.
+// Score is files per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class RerunBenchmark {
+
+    private static final int FILES = 2000;
+
+    @Param({"false", "true"})
+    public boolean skipNamed;
+
+    private Path folder;
+    private FileRenameService service;
+    private RenameConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("bench-rerun");
+        Path source = BenchmarkFiles.load("").get(0);
+        for (int i = 0; i < FILES; i++) {
+            Files.copy(source, folder.resolve("IMG_" + i + ".jpg"));
+        }
+
+        service = new FileRenameService();
+        config = RenameConfig.builder()
+                .targetFolder(folder)
+                .build();
+        // The first run names everything by the template
+        service.renamePhotos(config, BenchmarkListener.INSTANCE);
+
+        config = config.toBuilder()
+                .dryRun(true)
+                .skipMatchingNames(skipNamed)
+                .verifyEvery(0)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int rerun() {
+        service.renamePhotos(config, BenchmarkListener.INSTANCE);
+        return service.getStatistics().getSkipped();
+    }
+}
@@ -0,0 +1,78 @@
+package com.samfort.photorenamer;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Name scan over every directory and tag (the previous lookup) vs. precomputed tag ids
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagLookupBenchmark {
+
+    @Param("")
+    public String files;
+
+    private List<Metadata> metadata;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExifMetadataService service = new ExifMetadataService();
+        metadata = new ArrayList<>();
+        for (Path file : BenchmarkFiles.load(files)) {
+            metadata.add(service.readMetadata(file));
+        }
+    }
+
+    @Benchmark
+    public void nameScan(Blackhole bh) {
+        for (Metadata m : metadata) {
+            bh.consume(findTagByName(m, "F-Number"));
+            bh.consume(findTagByName(m, "Exposure Time"));
+            bh.consume(findTagByName(m, "ISO Speed Ratings"));
+            bh.consume(findTagByName(m, "Focal Length 35"));
+            bh.consume(findTagByName(m, "FocalLengthIn35mmFormat"));
+        }
+    }
+
+    @Benchmark
+    public void resolver(Blackhole bh) {
+        for (Metadata m : metadata) {
+            bh.consume(TagResolver.getDescription(m, TagResolver.Field.APERTURE));
+            bh.consume(TagResolver.getDescription(m, TagResolver.Field.EXPOSURE_TIME));
+            bh.consume(TagResolver.getDescription(m, TagResolver.Field.ISO));
+            bh.consume(TagResolver.getDescription(m, TagResolver.Field.FOCAL_LENGTH_35));
+        }
+    }
+
+    private static String findTagByName(Metadata metadata, String tagName) {
+        for (Directory dir : metadata.getDirectories()) {
+            for (Tag tag : dir.getTags()) {
+                if (tagName.equalsIgnoreCase(tag.getTagName())) {
+                    return tag.getDescription();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,112 @@
+package com.samfort.photorenamer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+// AIMD concurrency limit for one FileStore. Tasks wait in a queue instead of holding a
+// thread, so a slow store never blocks work for another one. The limit grows by about
+// one per `limit` completions while latency stays near the best seen, and shrinks by
+// 10% once it rises well above it. One slow spell is one signal: after a decrease, only
+// a task started since then can decrease again, as TCP reacts once per window.
+// A task's latency is the time it spent in storage calls (StorageTimer); tasks that made
+// none, such as cache hits, leave the limit alone.
+class AdaptiveLimiter {
+
+    private static final int INITIAL_LIMIT = 4;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.9;
+    private static final double SMOOTHING = 0.2;
+    // Lets the baseline follow the store if it gets permanently slower
+    private static final double BASELINE_DRIFT = 1.001;
+
+    private final String name;
+    private final int maxLimit;
+    private final Executor executor;
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private double smoothedLatencyNanos;
+    private double baselineLatencyNanos;
+    // Tasks dispatched so far, and how many of them had been at the last decrease
+    private long started;
+    private long startedAtDecrease;
+
+    AdaptiveLimiter(String name, int maxLimit, Executor executor) {
+        this.name = name;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.executor = executor;
+        this.limit = Math.min(INITIAL_LIMIT, this.maxLimit);
+    }
+
+    void submit(Runnable task) {
+        synchronized (this) {
+            queue.add(task);
+        }
+        dispatch();
+    }
+
+    synchronized StoreStatistics snapshot() {
+        return new StoreStatistics(name, (int) limit, inFlight, queue.size(), smoothedLatencyNanos / 1_000_000.0);
+    }
+
+    private void dispatch() {
+        List<Runnable> ready = new ArrayList<>();
+        long firstSequence;
+        synchronized (this) {
+            firstSequence = started + 1;
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                inFlight++;
+                started++;
+                ready.add(queue.poll());
+            }
+        }
+
+        for (int i = 0; i < ready.size(); i++) {
+            Runnable task = ready.get(i);
+            long sequence = firstSequence + i;
+            executor.execute(() -> {
+                long latency = 0;
+                try {
+                    latency = StorageTimer.measure(task);
+                } finally {
+                    onComplete(sequence, latency);
+                }
+            });
+        }
+    }
+
+    private void onComplete(long sequence, long latencyNanos) {
+        synchronized (this) {
+            inFlight--;
+            if (latencyNanos > 0) {
+                adjust(sequence, latencyNanos);
+            }
+        }
+        dispatch();
+    }
+
+    // Guarded by this
+    private void adjust(long sequence, long latencyNanos) {
+        smoothedLatencyNanos = smoothedLatencyNanos == 0
+                ? latencyNanos
+                : smoothedLatencyNanos + SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+        baselineLatencyNanos = baselineLatencyNanos == 0
+                ? latencyNanos
+                : Math.min(baselineLatencyNanos * BASELINE_DRIFT, latencyNanos);
+
+        if (smoothedLatencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+            // Tasks started before the last decrease still show the latency it reacted to
+            if (sequence > startedAtDecrease) {
+                limit = Math.max(1, limit * DECREASE_FACTOR);
+                startedAtDecrease = started;
+            }
+        } else if (inFlight + 1 >= (int) limit) {
+            // Only grow when the current limit is actually in use
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+}
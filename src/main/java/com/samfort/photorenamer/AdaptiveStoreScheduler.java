@@ -0,0 +1,62 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Groups files by FileStore and gives each store its own adaptive limit, so one slow
+// mount doesn't hold back the others. The store of a directory is looked up once. Stores
+// are told apart by the FileStore itself, which includes the mount point: two shares
+// mounted from the same device name, or two tmpfs mounts, still get a limit each.
+class AdaptiveStoreScheduler implements FileExecutor {
+
+    private static final Object UNKNOWN_STORE = new Object();
+
+    private final VirtualThreadExecutor executor = new VirtualThreadExecutor(VirtualThreadExecutor.UNLIMITED);
+    private final int maxConcurrencyPerStore;
+    private final RunStatistics statistics;
+    private final Map<Path, AdaptiveLimiter> limitersByDirectory = new ConcurrentHashMap<>();
+    // Keyed by FileStore, or UNKNOWN_STORE where it can't be looked up
+    private final Map<Object, AdaptiveLimiter> limitersByStore = new ConcurrentHashMap<>();
+
+    AdaptiveStoreScheduler(int maxConcurrencyPerStore, RunStatistics statistics) {
+        this.maxConcurrencyPerStore = maxConcurrencyPerStore;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void execute(Path file, Runnable task) {
+        Path directory = file.toAbsolutePath().getParent();
+        limitersByDirectory.computeIfAbsent(directory, this::limiterFor).submit(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private AdaptiveLimiter limiterFor(Path directory) {
+        FileStore store = fileStore(directory);
+        return limitersByStore.computeIfAbsent(store != null ? store : UNKNOWN_STORE, key -> {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(storeName(store), maxConcurrencyPerStore, executor);
+            statistics.registerStore(limiter);
+            return limiter;
+        });
+    }
+
+    private static FileStore fileStore(Path directory) {
+        try {
+            return Files.getFileStore(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // FileStore.toString() names the mount point too, e.g. "/mnt/photos (//nas/share)"
+    private static String storeName(FileStore store) {
+        return store == null ? "?" : store + " " + store.type();
+    }
+}
@@ -0,0 +1,125 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Buffered stream over positional FileChannel reads: skip() and reset() only move
+// the position, so skipped image data is never read from disk
+class ChannelInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final long length;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private long bufferStart;
+    private int bufferLength;
+    private long position;
+    private long markPosition;
+    private long bytesRead;
+
+    ChannelInputStream(FileChannel channel, long length) {
+        this.channel = channel;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) return -1;
+
+        int value = buffer[(int) (position - bufferStart)] & 0xFF;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position >= length) return -1;
+
+        // Large reads (e.g. a whole APP1 segment) go straight into the caller's array
+        if (len >= BUFFER_SIZE && !isBuffered(position)) {
+            int read = readAt(ByteBuffer.wrap(b, off, (int) Math.min(len, length - position)), position);
+            if (read > 0) position += read;
+            return read;
+        }
+
+        if (!ensureBuffered()) return -1;
+
+        int offsetInBuffer = (int) (position - bufferStart);
+        int count = Math.min(len, bufferLength - offsetInBuffer);
+        System.arraycopy(buffer, offsetInBuffer, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+
+        long skipped = Math.min(n, length - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = markPosition;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    private boolean isBuffered(long pos) {
+        return pos >= bufferStart && pos < bufferStart + bufferLength;
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        if (isBuffered(position)) return true;
+        if (position >= length) return false;
+
+        int read = readAt(ByteBuffer.wrap(buffer), position);
+        if (read <= 0) {
+            bufferLength = 0;
+            return false;
+        }
+
+        bufferStart = position;
+        bufferLength = read;
+        return true;
+    }
+
+    private int readAt(ByteBuffer target, long pos) throws IOException {
+        int total = 0;
+        long start = System.nanoTime();
+        while (target.hasRemaining()) {
+            int read = channel.read(target, pos + total);
+            if (read < 0) break;
+            total += read;
+        }
+        StorageTimer.add(System.nanoTime() - start);
+        bytesRead += total;
+        // Nothing at all, also short of the length seen at open (the file was truncated):
+        // 0 would break the InputStream contract and make a reader spin on the same spot
+        return total == 0 ? -1 : total;
+    }
+}
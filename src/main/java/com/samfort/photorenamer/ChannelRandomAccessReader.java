@@ -0,0 +1,104 @@
+package com.samfort.photorenamer;
+
+import com.drew.lang.BufferBoundsException;
+import com.drew.lang.RandomAccessReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+// Random access over a FileChannel for TIFF-based files. Only the first chunk is read
+// up front; further chunks are fetched with positional reads when an IFD offset points
+// past what has been loaded, so large image strips between IFDs are never touched.
+class ChannelRandomAccessReader extends RandomAccessReader {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final FileChannel channel;
+    private final long length;
+    private final Map<Integer, byte[]> chunks = new HashMap<>();
+
+    private long bytesRead;
+
+    ChannelRandomAccessReader(FileChannel channel, long length) {
+        this.channel = channel;
+        this.length = length;
+    }
+
+    @Override
+    public int toUnshiftedOffset(int localOffset) {
+        return localOffset;
+    }
+
+    @Override
+    public byte getByte(int index) throws IOException {
+        validateIndex(index, 1);
+        return chunk(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+    }
+
+    @Override
+    public byte[] getBytes(int index, int count) throws IOException {
+        validateIndex(index, count);
+
+        byte[] bytes = new byte[count];
+        int copied = 0;
+        while (copied < count) {
+            int pos = index + copied;
+            int offsetInChunk = pos % CHUNK_SIZE;
+            int toCopy = Math.min(count - copied, CHUNK_SIZE - offsetInChunk);
+            System.arraycopy(chunk(pos / CHUNK_SIZE), offsetInChunk, bytes, copied, toCopy);
+            copied += toCopy;
+        }
+        return bytes;
+    }
+
+    @Override
+    protected void validateIndex(int index, int bytesRequested) throws IOException {
+        if (!isValidIndex(index, bytesRequested)) {
+            if (index < 0) {
+                throw new BufferBoundsException(String.format("Attempt to read from buffer using a negative index (%d)", index));
+            }
+            throw new BufferBoundsException(index, bytesRequested, length);
+        }
+    }
+
+    @Override
+    protected boolean isValidIndex(int index, int bytesRequested) {
+        return index >= 0 && bytesRequested >= 0 && (long) index + bytesRequested <= length;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    private byte[] chunk(int chunkIndex) throws IOException {
+        byte[] chunk = chunks.get(chunkIndex);
+        if (chunk != null) return chunk;
+
+        long start = (long) chunkIndex * CHUNK_SIZE;
+        chunk = new byte[(int) Math.min(CHUNK_SIZE, length - start)];
+
+        ByteBuffer target = ByteBuffer.wrap(chunk);
+        long readStart = System.nanoTime();
+        try {
+            while (target.hasRemaining()) {
+                if (channel.read(target, start + target.position()) < 0) {
+                    throw new BufferBoundsException("Unexpected end of file at offset " + (start + target.position()));
+                }
+            }
+        } finally {
+            StorageTimer.add(System.nanoTime() - readStart);
+        }
+
+        bytesRead += chunk.length;
+        chunks.put(chunkIndex, chunk);
+        return chunk;
+    }
+}
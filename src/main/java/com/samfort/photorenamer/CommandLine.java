@@ -0,0 +1,274 @@
+package com.samfort.photorenamer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Headless mode, used when PhotoRenamer is started with arguments. Results go to
+// stdout as NDJSON (see NdjsonProgressListener), problems with the run itself to
+// stderr. Nothing here may touch AWT/Swing, so it works on servers and from cron.
+public class CommandLine {
+
+    public static final int EXIT_OK = 0;
+    // Some files could not be renamed
+    public static final int EXIT_FILE_ERRORS = 1;
+    public static final int EXIT_USAGE = 2;
+    // The folder is missing or the run failed as a whole
+    public static final int EXIT_FAILURE = 3;
+
+    private static final String USAGE = """
+            Использование: photo-renamer [параметры] <папка>
+                           photo-renamer --undo | --resume [параметры]
+                           photo-renamer --watch [параметры] <папка>
+              --dry-run             только показать новые имена
+              --no-recursive        не заходить в подпапки
+              --fast                быстрое чтение EXIF
+              --streaming           обрабатывать файлы, не дожидаясь обхода всей папки
+              --mode <режим>        FIXED_POOL, VIRTUAL_THREADS, ADAPTIVE или LOCALITY
+              --concurrency <N>     одновременных чтений для VIRTUAL_THREADS и ADAPTIVE
+              --template <шаблон>   шаблон имени, по умолчанию %s
+              --no-cache            не использовать кэш метаданных
+              --skip-named          не читать файлы, имя которых уже подходит под шаблон
+              --verify-every <N>    с --skip-named всё же читать каждый N-й такой файл, по умолчанию %d (0 — ни одного)
+              --metrics             замерить время каждого этапа (событие metrics)
+              --journal <файл>      журнал переименований, по умолчанию %s
+              --no-journal          не вести журнал (отменить запуск будет нельзя)
+              --undo                вернуть старые имена файлам последнего запуска
+              --resume              продолжить прерванный запуск с его настройками
+              --watch               следить за папкой и переименовывать новые файлы, пока не остановят
+              --settle <мс>         для --watch: сколько размер файла не должен меняться, по умолчанию %d
+              --help                эта справка
+            В режиме --watch журнал не ведётся, каждая пачка файлов выводится как отдельный запуск
+            Ctrl+C дожидается файлов в работе и останавливает запуск; продолжить его можно с --resume
+            Коды выхода: 0 — готово, 1 — были ошибки в файлах, 2 — неверные параметры, 3 — сбой запуска
+            """.formatted(FilenameTemplate.DEFAULT_PATTERN, RenameConfig.DEFAULT_VERIFY_EVERY, RenameJournal.DEFAULT_FILE, FolderWatcher.DEFAULT_SETTLE_MILLIS);
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    public static int run(String[] args) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+        return run(args, out, System.err);
+    }
+
+    static int run(String[] args, Writer out, PrintStream err) {
+        RenameConfig.RenameConfigBuilder config = RenameConfig.builder().recursive(true);
+        boolean useCache = true;
+        Path journalFile = RenameJournal.DEFAULT_FILE;
+        boolean undo = false;
+        boolean resume = false;
+        boolean watch = false;
+        long settleMillis = FolderWatcher.DEFAULT_SETTLE_MILLIS;
+        Path folder = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--help", "-h" -> {
+                        err.print(USAGE);
+                        return EXIT_OK;
+                    }
+                    case "--dry-run" -> config.dryRun(true);
+                    case "--no-recursive" -> config.recursive(false);
+                    case "--fast" -> config.extractionMode(ExtractionMode.FAST);
+                    case "--streaming" -> config.streaming(true);
+                    case "--no-cache" -> useCache = false;
+                    case "--skip-named" -> config.skipMatchingNames(true);
+                    case "--verify-every" -> {
+                        int verifyEvery = Integer.parseInt(value(args, ++i, arg));
+                        if (verifyEvery < 0) {
+                            throw new IllegalArgumentException(arg + " не может быть отрицательным");
+                        }
+                        config.verifyEvery(verifyEvery);
+                    }
+                    case "--metrics" -> config.instrumented(true);
+                    case "--journal" -> journalFile = Path.of(value(args, ++i, arg));
+                    case "--no-journal" -> journalFile = null;
+                    case "--undo" -> undo = true;
+                    case "--resume" -> resume = true;
+                    case "--watch" -> watch = true;
+                    case "--settle" -> {
+                        settleMillis = Long.parseLong(value(args, ++i, arg));
+                        if (settleMillis < 0) {
+                            throw new IllegalArgumentException(arg + " не может быть отрицательным");
+                        }
+                    }
+                    case "--mode" -> config.executionMode(parseMode(value(args, ++i, arg)));
+                    case "--concurrency" -> {
+                        int concurrency = Integer.parseInt(value(args, ++i, arg));
+                        if (concurrency <= 0) {
+                            throw new IllegalArgumentException(arg + " должен быть больше нуля");
+                        }
+                        config.maxConcurrency(concurrency);
+                    }
+                    case "--template" -> config.filenameTemplate(FilenameTemplate.compile(value(args, ++i, arg)));
+                    default -> {
+                        if (arg.startsWith("-") || folder != null) {
+                            throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                        }
+                        folder = Path.of(arg);
+                    }
+                }
+            }
+            if (watch && (undo || resume)) {
+                throw new IllegalArgumentException("--watch нельзя сочетать с --undo и --resume");
+            }
+            if (undo || resume) {
+                if (undo && resume || folder != null) {
+                    throw new IllegalArgumentException("--undo и --resume работают с журналом, а не с папкой");
+                }
+                if (journalFile == null) {
+                    throw new IllegalArgumentException("--undo и --resume не работают без журнала");
+                }
+            } else if (folder == null) {
+                throw new IllegalArgumentException("Не указана папка");
+            }
+        } catch (IllegalArgumentException e) {
+            // Also covers a bad --concurrency number and template syntax errors
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        if (undo || resume) {
+            if (!Files.isRegularFile(journalFile)) {
+                err.println("Журнал не найден: " + journalFile);
+                return EXIT_FAILURE;
+            }
+        } else if (!Files.isDirectory(folder)) {
+            err.println("Папка не найдена: " + folder);
+            return EXIT_FAILURE;
+        }
+
+        loadCropFactors(err);
+
+        FileRenameService service = useCache
+                ? new FileRenameService(MetadataCache.open(MetadataCache.DEFAULT_FILE))
+                : new FileRenameService();
+        NdjsonProgressListener listener = new NdjsonProgressListener(out, folder);
+        if (watch) {
+            return watch(service, config.targetFolder(folder.toAbsolutePath().normalize()).build(), listener,
+                    settleMillis, err);
+        }
+        config.journalFile(journalFile);
+        RenameJob job;
+        if (undo) {
+            job = service.startUndo(journalFile, listener);
+        } else if (resume) {
+            job = service.startResume(journalFile, config.build(), listener);
+        } else {
+            job = service.start(config.targetFolder(folder.toAbsolutePath().normalize()).build(), listener);
+        }
+
+        // Ctrl+C or kill: let the files in progress finish, so the journal matches the folder
+        Thread stopOnExit = new Thread(() -> {
+            job.cancel();
+            try {
+                job.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(stopOnExit);
+        try {
+            job.await();
+            Runtime.getRuntime().removeShutdownHook(stopOnExit);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down, the hook has nothing left to wait for
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+            return EXIT_FAILURE;
+        } finally {
+            service.shutdown();
+        }
+
+        if (job.getFailure() != null) {
+            err.println("Ошибка: " + job.getFailure());
+            return EXIT_FAILURE;
+        }
+
+        if (listener.getFailure() != null) {
+            err.println("Не удалось записать результат: " + listener.getFailure().getMessage());
+            return EXIT_FAILURE;
+        }
+        return listener.getErrors() > 0 ? EXIT_FILE_ERRORS : EXIT_OK;
+    }
+
+    // Runs until Ctrl+C or kill; the batch in progress is finished first
+    private static int watch(FileRenameService service, RenameConfig config, NdjsonProgressListener listener,
+                             long settleMillis, PrintStream err) {
+        FolderWatcher watcher;
+        try {
+            watcher = new FolderWatcher(service, config, listener, settleMillis);
+        } catch (IOException e) {
+            service.shutdown();
+            err.println("Не удалось следить за папкой: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread stopOnExit = new Thread(() -> {
+            try {
+                watcher.close();
+                stopped.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                // Nothing more to stop
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(stopOnExit);
+        try {
+            watcher.run();
+        } catch (IOException e) {
+            err.println("Ошибка: " + e.getMessage());
+            return EXIT_FAILURE;
+        } finally {
+            service.shutdown();
+            stopped.countDown();
+        }
+
+        if (listener.getFailure() != null) {
+            err.println("Не удалось записать результат: " + listener.getFailure().getMessage());
+            return EXIT_FAILURE;
+        }
+        return EXIT_OK;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Не указано значение для " + option);
+        }
+        return args[index];
+    }
+
+    private static ExecutionMode parseMode(String value) {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный режим: " + value);
+    }
+
+    private static void loadCropFactors(PrintStream err) {
+        if (!Files.isRegularFile(CropFactorDatabase.USER_FILE)) {
+            return;
+        }
+
+        try {
+            CropFactorDatabase.loadUserTable(CropFactorDatabase.USER_FILE);
+        } catch (IOException | IllegalArgumentException e) {
+            err.println("Не удалось загрузить таблицу кроп-факторов: " + e.getMessage());
+        }
+    }
+}
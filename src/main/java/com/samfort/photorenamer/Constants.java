@@ -9,6 +9,9 @@ public class Constants {
     public static final int WINDOW_HEIGHT = 580;
     public static final int PADDING = 15;
     public static final int COMPONENT_SPACING = 10;
+    // Older log lines are dropped, the summary at the end is always kept
+    public static final int LOG_CAPACITY = 100_000;
+    public static final int LOG_REFRESH_MILLIS = 100;
 
     // File processing
     public static final Set<String> SUPPORTED_EXTENSIONS = Set.of(
@@ -24,6 +27,18 @@ public class Constants {
     public static final String WINDOW_TITLE = "PhotoRenamer — переименование по EXIF";
     public static final String SELECT_FOLDER_BUTTON = "Выбрать папку";
     public static final String RECURSIVE_CHECKBOX = "Рекурсивно (включая подпапки)";
+    public static final String FAST_EXIF_CHECKBOX = "Быстрое чтение EXIF";
+    public static final String SKIP_NAMED_CHECKBOX = "Пропускать уже переименованные";
+    public static final String TEMPLATE_LABEL = "Шаблон имени:";
+    public static final String EXECUTION_MODE_LABEL = "Потоки:";
+    public static final String EXECUTION_FIXED_POOL = "По числу ядер";
+    public static final String EXECUTION_VIRTUAL_THREADS = "Виртуальные (сетевые диски)";
+    public static final String EXECUTION_ADAPTIVE = "Адаптивно по дискам";
+    public static final String EXECUTION_LOCALITY = "По папкам, в порядке на диске (HDD)";
     public static final String DRY_RUN_BUTTON = "Сухой запуск (для проверки результат без переименования)";
     public static final String RENAME_BUTTON = "Переименовать!";
+    public static final String UNDO_BUTTON = "Отменить последний запуск";
+    public static final String PAUSE_BUTTON = "Пауза";
+    public static final String CONTINUE_BUTTON = "Продолжить";
+    public static final String STOP_BUTTON = "Остановить";
 }
@@ -1,39 +1,152 @@
 package com.samfort.photorenamer;
 
-import java.util.LinkedHashMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
-// В идеале расширить базу данных и сделать ее настраиваемой
+// Crop factors by camera model, from crop-factors.txt on the classpath plus an optional
+// user file (format described in that resource). A shoot usually comes from one or two
+// bodies, so each model string is resolved once and then answered from a map.
 public class CropFactorDatabase {
 
-    private static final Map<Pattern, Double> CROP_FACTORS = new LinkedHashMap<>();
+    public static final Path USER_FILE = Path.of(System.getProperty("user.home"), ".photorenamer", "crop-factors.txt");
 
-    static {
-        // iPhone patterns (порядок важен - от конкретного к общему)
-        CROP_FACTORS.put(Pattern.compile("iPhone\\s*(1[5-6])\\s*Pro", Pattern.CASE_INSENSITIVE), 7.0);
-        CROP_FACTORS.put(Pattern.compile("iPhone\\s*1[4-6]", Pattern.CASE_INSENSITIVE), 6.86);
-        CROP_FACTORS.put(Pattern.compile("iPhone\\s*13\\s*Pro", Pattern.CASE_INSENSITIVE), 6.0);
-        CROP_FACTORS.put(Pattern.compile("iPhone", Pattern.CASE_INSENSITIVE), 5.7);
+    private static final String BUILT_IN_RESOURCE = "/crop-factors.txt";
+    private static final String EXACT_PREFIX = "exact:";
+    private static final String REGEX_PREFIX = "regex:";
+    // Cached for models without a factor, ConcurrentHashMap can't hold null
+    private static final Double NOT_FOUND = Double.NaN;
+    // Guards the memo against files with garbage in the model tag
+    private static final int MAX_MEMOIZED_MODELS = 1024;
 
-        // Google Pixel
-        CROP_FACTORS.put(Pattern.compile("Pixel\\s*8\\s*Pro", Pattern.CASE_INSENSITIVE), 6.7);
-        CROP_FACTORS.put(Pattern.compile("Pixel", Pattern.CASE_INSENSITIVE), 6.0);
+    private static volatile CropFactorDatabase instance = builtIn();
 
-        // Samsung Galaxy
-        CROP_FACTORS.put(Pattern.compile("Galaxy\\s*S2[34]\\s*Ultra", Pattern.CASE_INSENSITIVE), 6.6);
-        CROP_FACTORS.put(Pattern.compile("Galaxy\\s*S", Pattern.CASE_INSENSITIVE), 6.0);
+    private final Map<String, Double> exact;
+    private final List<Rule> rules;
+    private final Map<String, Double> lookups = new ConcurrentHashMap<>();
+
+    private record Rule(Pattern pattern, double factor) {
+    }
+
+    private CropFactorDatabase(Map<String, Double> exact, List<Rule> rules) {
+        this.exact = exact;
+        this.rules = rules;
     }
 
     public static Double getCropFactor(String model) {
+        return instance.lookup(model);
+    }
+
+    // Puts the user's entries in front of the built-in table
+    public static void loadUserTable(Path file) throws IOException {
+        CropFactorDatabase user;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            user = parse(reader, file.toString());
+        }
+        instance = user.then(builtIn());
+    }
+
+    Double lookup(String model) {
         if (model == null) return null;
 
-        for (Map.Entry<Pattern, Double> entry : CROP_FACTORS.entrySet()) {
-            if (entry.getKey().matcher(model).find()) {
-                return entry.getValue();
+        Double factor = lookups.get(model);
+        if (factor == null) {
+            factor = resolve(model);
+            if (lookups.size() < MAX_MEMOIZED_MODELS) {
+                lookups.put(model, factor);
+            }
+        }
+        return factor.isNaN() ? null : factor;
+    }
+
+    private Double resolve(String model) {
+        Double factor = exact.get(normalize(model));
+        if (factor != null) {
+            return factor;
+        }
+
+        for (Rule rule : rules) {
+            if (rule.pattern().matcher(model).find()) {
+                return rule.factor();
             }
         }
 
-        return null;
+        return NOT_FOUND;
+    }
+
+    // This table first, then the fallback
+    private CropFactorDatabase then(CropFactorDatabase fallback) {
+        Map<String, Double> mergedExact = new HashMap<>(fallback.exact);
+        mergedExact.putAll(exact);
+
+        List<Rule> mergedRules = new ArrayList<>(rules);
+        mergedRules.addAll(fallback.rules);
+
+        return new CropFactorDatabase(mergedExact, mergedRules);
+    }
+
+    private static CropFactorDatabase builtIn() {
+        try (InputStream in = CropFactorDatabase.class.getResourceAsStream(BUILT_IN_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException(BUILT_IN_RESOURCE + " is missing");
+            }
+            return parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), BUILT_IN_RESOURCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static CropFactorDatabase parse(BufferedReader reader, String source) throws IOException {
+        Map<String, Double> exact = new HashMap<>();
+        List<Rule> rules = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int equals = line.lastIndexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException(source + ":" + lineNumber + ": expected '<model> = <factor>'");
+            }
+            String key = line.substring(0, equals).strip();
+            double factor;
+            try {
+                factor = Double.parseDouble(line.substring(equals + 1).strip());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(source + ":" + lineNumber + ": invalid crop factor");
+            }
+
+            if (key.startsWith(EXACT_PREFIX)) {
+                exact.put(normalize(key.substring(EXACT_PREFIX.length())), factor);
+            } else if (key.startsWith(REGEX_PREFIX)) {
+                String regex = key.substring(REGEX_PREFIX.length()).strip();
+                rules.add(new Rule(Pattern.compile(regex, Pattern.CASE_INSENSITIVE), factor));
+            } else {
+                throw new IllegalArgumentException(source + ":" + lineNumber + ": expected 'exact:' or 'regex:'");
+            }
+        }
+
+        return new CropFactorDatabase(exact, rules);
+    }
+
+    private static String normalize(String model) {
+        return model.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
     }
 }
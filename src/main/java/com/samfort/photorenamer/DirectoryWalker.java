@@ -0,0 +1,180 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Lists a folder tree with one fork/join task per directory, so the listings of sibling
+// directories overlap; on a network share each one is a round trip. Every entry comes with
+// the attributes the listing produced (cached on Windows, one lstat elsewhere), so there is
+// no second stat per file as with Files.walk + Files.isRegularFile. Unreadable directories
+// are skipped, the rest of the tree is still walked.
+//
+// In disk order the files of each directory are sorted by inode before they are visited,
+// which on most file systems is close to the order of their blocks on disk.
+//
+// Each walk gets a pool of its own. A visitor may block for a long time (a streaming run
+// waiting for room in flight, or a paused job), and that must not stall other walks in the
+// same JVM, such as a watcher rescan or a dry run started meanwhile.
+class DirectoryWalker {
+
+    // Listings wait on the disk or the network, not the CPU
+    static final int PARALLELISM = 16;
+
+    private static final String[] EXTENSIONS = Constants.SUPPORTED_EXTENSIONS.toArray(String[]::new);
+
+    // Called from several walker threads at once; false stops the walk
+    interface Visitor {
+        boolean visit(Path file, BasicFileAttributes attributes);
+    }
+
+    private final Visitor visitor;
+    private final int maxDepth;
+    private final boolean diskOrder;
+    private volatile boolean stopped;
+
+    private record Entry(Path file, BasicFileAttributes attributes, long inode) {
+    }
+
+    private DirectoryWalker(Visitor visitor, int maxDepth, boolean diskOrder) {
+        this.visitor = visitor;
+        this.maxDepth = maxDepth;
+        this.diskOrder = diskOrder;
+    }
+
+    // Supported image files up to maxDepth levels below root (1 = root only), in no particular order
+    static void walk(Path root, int maxDepth, Visitor visitor) {
+        walk(root, maxDepth, false, visitor);
+    }
+
+    // Directories are still walked in parallel; in disk order each one's files come in
+    // a row, sorted by inode
+    static void walk(Path root, int maxDepth, boolean diskOrder, Visitor visitor) {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            pool.invoke(new DirectoryWalker(visitor, maxDepth, diskOrder).new DirectoryTask(root, 1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The JDK only exposes the inode through the file key's text, "(dev=803,ino=1234)" on
+    // Unix; asking for "unix:ino" would cost another stat. -1 where there is none (Windows).
+    static long inode(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        if (key == null) {
+            return -1;
+        }
+
+        String text = key.toString();
+        int start = text.indexOf("ino=");
+        if (start < 0) {
+            return -1;
+        }
+        start += 4;
+        long inode = 0;
+        int end = start;
+        while (end < text.length() && Character.isDigit(text.charAt(end))) {
+            inode = inode * 10 + (text.charAt(end++) - '0');
+        }
+        return end > start ? inode : -1;
+    }
+
+    // Compares the end of the path with each extension in place, the path string is cached
+    static boolean isSupportedImageFile(Path file) {
+        String path = file.toString();
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || path.indexOf(file.getFileSystem().getSeparator(), dot) >= 0) {
+            return false;
+        }
+
+        int length = path.length() - dot;
+        for (String extension : EXTENSIONS) {
+            if (extension.length() == length && path.regionMatches(true, dot, extension, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+
+        DirectoryTask(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            List<Entry> files = diskOrder ? new ArrayList<>() : null;
+            try {
+                // Depth 1 hands out every entry, directories included, with its attributes
+                Files.walkFileTree(directory, Set.of(), 1, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (stopped) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (attributes.isDirectory()) {
+                            if (depth < maxDepth) {
+                                subdirectories.add(new DirectoryTask(file, depth + 1));
+                            }
+                        } else if (isSupportedImageFile(file) && isRegularFile(file, attributes)) {
+                            if (files != null) {
+                                files.add(new Entry(file, attributes, inode(attributes)));
+                            } else if (!visitor.visit(file, attributes)) {
+                                stopped = true;
+                                return FileVisitResult.TERMINATE;
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                // Skip this directory
+            }
+            if (files != null) {
+                visitInDiskOrder(files);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    // Without inodes the name order is kept, which is how NTFS lists a directory anyway
+    private void visitInDiskOrder(List<Entry> files) {
+        files.sort(Comparator.comparingLong(Entry::inode).thenComparing(Entry::file));
+        for (Entry entry : files) {
+            if (stopped) {
+                return;
+            }
+            if (!visitor.visit(entry.file(), entry.attributes())) {
+                stopped = true;
+                return;
+            }
+        }
+    }
+
+    // Links aren't followed while walking, but a link to a photo still counts, as before
+    private static boolean isRegularFile(Path file, BasicFileAttributes attributes) {
+        return attributes.isRegularFile() || attributes.isSymbolicLink() && Files.isRegularFile(file);
+    }
+}
@@ -0,0 +1,23 @@
+package com.samfort.photorenamer;
+
+public enum ExecutionMode {
+    // One platform thread per CPU core
+    FIXED_POOL(Constants.EXECUTION_FIXED_POOL),
+    // One virtual thread per file, limited by RenameConfig.maxConcurrency (for NFS/SMB)
+    VIRTUAL_THREADS(Constants.EXECUTION_VIRTUAL_THREADS),
+    // Per-FileStore limits adjusted from observed read latency, up to maxConcurrency each
+    ADAPTIVE(Constants.EXECUTION_ADAPTIVE),
+    // One thread per core taking whole runs of a directory, files in inode order (HDD, HSM)
+    LOCALITY(Constants.EXECUTION_LOCALITY);
+
+    private final String title;
+
+    ExecutionMode(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
@@ -1,38 +1,147 @@
 package com.samfort.photorenamer;
 
-import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.lang.Rational;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
-import com.drew.metadata.Tag;
 import com.drew.metadata.exif.ExifIFD0Directory;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
 
 public class ExifMetadataService {
 
-    public Optional<ZonedDateTime> extractPhotoDateTime(Path file) {
+    private final ReadStatistics readStatistics = new ReadStatistics();
+    private final HeaderReader headerReader = new HeaderReader(readStatistics);
+    private final ExifTagParser tagParser = new ExifTagParser(readStatistics);
+    private final MetadataCache cache;
+
+    public ExifMetadataService() {
+        this(null);
+    }
+
+    public ExifMetadataService(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    public PhotoMetadata extractMetadata(Path file, ExtractionMode mode) {
+        if (cache == null) {
+            return parseMetadata(file, mode);
+        }
+
+        BasicFileAttributes attributes;
         try {
-            var metadata = ImageMetadataReader.readMetadata(file.toFile());
-            var date = extractDateFromMetadata(metadata);
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return parseMetadata(file, mode);
+        }
 
-            if (date == null) {
-                return Optional.empty();
+        PhotoMetadata cached = cache.get(file, attributes);
+        if (cached != null) {
+            readStatistics.recordCacheHit();
+            return withCurrentCropFactor(cached);
+        }
+
+        readStatistics.recordCacheMiss();
+        PhotoMetadata metadata = parseMetadata(file, mode);
+        // Failed reads also come back empty, don't pin them until the file changes
+        if (!metadata.equals(PhotoMetadata.EMPTY)) {
+            cache.put(file, attributes, metadata);
+        }
+        return metadata;
+    }
+
+    private PhotoMetadata parseMetadata(Path file, ExtractionMode mode) {
+        if (mode == ExtractionMode.FAST) {
+            try {
+                PhotoMetadata metadata = tagParser.parse(file);
+                if (metadata != null) {
+                    return metadata;
+                }
+            } catch (Exception e) {
+                // Fall back to the full library parse
             }
+        }
+
+        return extractMetadata(file);
+    }
 
-            return Optional.of(date.toInstant().atZone(ZoneId.of("UTC")));
+    public PhotoMetadata extractMetadata(Path file) {
+        try {
+            return toPhotoMetadata(readMetadata(file));
         } catch (Exception e) {
-            return Optional.empty();
+            return PhotoMetadata.EMPTY;
         }
     }
 
-    private Date extractDateFromMetadata(Metadata metadata) {
+    // Single point where a file is opened and parsed
+    Metadata readMetadata(Path file) throws ImageProcessingException, IOException {
+        return headerReader.read(file);
+    }
+
+    public ReadStatistics getReadStatistics() {
+        return readStatistics;
+    }
+
+    void onRenamed(Path source, Path target) {
+        if (cache != null) {
+            cache.moved(source, target);
+        }
+    }
+
+    // Writes entries added during the run to disk
+    void flushCache() {
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    // Cached entries keep the recorded focal length, the table may have changed since
+    private static PhotoMetadata withCurrentCropFactor(PhotoMetadata metadata) {
+        if (Double.isNaN(metadata.getRealFocalLength())) return metadata;
+
+        PhotoMetadata.PhotoMetadataBuilder builder = metadata.toBuilder()
+                .focalLength(PhotoMetadata.NO_VALUE)
+                .focalEstimated(false);
+        resolveFocalLength(builder, PhotoMetadata.NO_VALUE, metadata.getRealFocalLength(), metadata.getModel());
+        PhotoMetadata resolved = builder.build();
+        return resolved.getFocalLength() == metadata.getFocalLength()
+                && resolved.isFocalEstimated() == metadata.isFocalEstimated() ? metadata : resolved;
+    }
+
+    // Typed values are read straight from the EXIF directories; maker notes that encode
+    // a field differently are parsed from their description
+    static PhotoMetadata toPhotoMetadata(Metadata metadata) {
+        String model = getString(metadata, ExifIFD0Directory.class, ExifIFD0Directory.TAG_MODEL);
+        PhotoMetadata.PhotoMetadataBuilder builder = PhotoMetadata.builder()
+                .model(model)
+                .apertureTenths(extractAperture(metadata))
+                .iso(extractInteger(metadata, TagResolver.Field.ISO));
+
+        Date date = extractDateFromMetadata(metadata);
+        if (date != null) {
+            builder.captureTime(Math.floorDiv(date.getTime(), 1000));
+        }
+
+        Rational exposure = extractExposure(metadata);
+        if (exposure != null) {
+            builder.exposureNumerator(exposure.getNumerator()).exposureDenominator(exposure.getDenominator());
+        }
+
+        resolveFocalLength(builder, extractInteger(metadata, TagResolver.Field.FOCAL_LENGTH_35),
+                parseFocalLength(getString(metadata, ExifSubIFDDirectory.class, ExifSubIFDDirectory.TAG_FOCAL_LENGTH)),
+                model);
+
+        return builder.build();
+    }
+
+    private static Date extractDateFromMetadata(Metadata metadata) {
         // Try EXIF SubIFD first (most reliable)
         var subDir = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
         if (subDir != null) {
@@ -49,79 +158,137 @@ public class ExifMetadataService {
         return null;
     }
 
-    public Map<String, String> extractPhotoMetadata(Path file) {
-        Map<String, String> result = new HashMap<>();
+    private static String getString(Metadata metadata, Class<? extends Directory> dirClass, int tagId) {
+        Directory dir = metadata.getFirstDirectoryOfType(dirClass);
+        return (dir != null && dir.containsTag(tagId)) ? dir.getString(tagId) : null;
+    }
+
+    private static int extractInteger(Metadata metadata, TagResolver.Field field) {
+        TagResolver.Match match = TagResolver.find(metadata, field);
+        Integer value = match == null ? null : match.directory().getInteger(match.tagId());
+        return value == null || value < 0 ? PhotoMetadata.NO_VALUE : value;
+    }
 
-        try {
-            Metadata metadata = ImageMetadataReader.readMetadata(file.toFile());
+    private static int extractAperture(Metadata metadata) {
+        TagResolver.Match match = TagResolver.find(metadata, TagResolver.Field.APERTURE);
+        if (match == null) return PhotoMetadata.NO_VALUE;
 
-            result.put("model", getTag(metadata, ExifIFD0Directory.class, ExifIFD0Directory.TAG_MODEL));
-            result.put("focal", extractFocalLength(metadata));
-            result.put("aperture", findTagByName(metadata, "F-Number"));
-            result.put("shutter", findTagByName(metadata, "Exposure Time"));
-            result.put("iso", findTagByName(metadata, "ISO Speed Ratings"));
+        Rational value = match.isExif() ? match.directory().getRational(match.tagId()) : null;
+        return value != null ? apertureTenths(value.doubleValue()) : parseApertureTenths(match.description());
+    }
 
-        } catch (Exception e) {
-            // Return empty map on error
-        }
+    private static Rational extractExposure(Metadata metadata) {
+        TagResolver.Match match = TagResolver.find(metadata, TagResolver.Field.EXPOSURE_TIME);
+        if (match == null) return null;
 
-        return result;
+        Rational value = match.isExif() ? match.directory().getRational(match.tagId()) : null;
+        return value != null ? value : parseExposure(match.description());
     }
 
-    private String getTag(Metadata metadata, Class<? extends Directory> dirClass, int tagId) {
-        Directory dir = metadata.getFirstDirectoryOfType(dirClass);
-        return (dir != null && dir.containsTag(tagId)) ? dir.getString(tagId) : null;
+    // Rounded like the library's "f/0.0" description: half up on the exact binary value.
+    // The description of f/0 is "f/0.0" and names show it; a sign was stripped with the "f/".
+    static int apertureTenths(double fNumber) {
+        if (Double.isNaN(fNumber) || Double.isInfinite(fNumber)) return PhotoMetadata.NO_VALUE;
+        return new BigDecimal(Math.abs(fNumber)).setScale(1, RoundingMode.HALF_UP).unscaledValue().intValue();
     }
 
-    private String findTagByName(Metadata metadata, String tagName) {
-        for (Directory dir : metadata.getDirectories()) {
-            for (Tag tag : dir.getTags()) {
-                if (tagName.equalsIgnoreCase(tag.getTagName())) {
-                    return tag.getDescription();
-                }
+    // "f/2.8", "2,8"
+    static int parseApertureTenths(String description) {
+        if (description == null) return PhotoMetadata.NO_VALUE;
+
+        StringBuilder number = new StringBuilder();
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+            if (c >= '0' && c <= '9' || c == '.') {
+                number.append(c);
+            } else if (c == ',') {
+                number.append('.');
             }
         }
-        return null;
-    }
 
-    private String extractFocalLength(Metadata metadata) {
-        // Try 35mm equivalent first
-        String focal35 = findTagByName(metadata, "Focal Length 35");
-        if (focal35 != null) {
-            return focal35.replaceAll("\\s+", "_");
+        try {
+            return apertureTenths(Double.parseDouble(number.toString()));
+        } catch (NumberFormatException e) {
+            return PhotoMetadata.NO_VALUE;
         }
+    }
 
-        // Try Samsung format
-        String samsung = findTagByName(metadata, "FocalLengthIn35mmFormat");
-        if (samsung != null) {
-            return samsung.trim();
-        }
+    // "1/200 sec", "3109601_1000000000 sec", "0.5 sec"
+    static Rational parseExposure(String description) {
+        if (description == null || description.isBlank()) return null;
 
-        // Calculate from crop factor
-        String realFocal = getTag(metadata, ExifSubIFDDirectory.class, ExifSubIFDDirectory.TAG_FOCAL_LENGTH);
-        String model = getTag(metadata, ExifIFD0Directory.class, ExifIFD0Directory.TAG_MODEL);
+        try {
+            char separator = description.indexOf('/') >= 0 ? '/' : description.indexOf('_') >= 0 ? '_' : 0;
+            if (separator == 0) {
+                String number = description.strip();
+                int end = 0;
+                while (end < number.length() && (Character.isDigit(number.charAt(end)) || number.charAt(end) == '.')) end++;
+                BigDecimal seconds = new BigDecimal(number.substring(0, end));
+                if (seconds.scale() < 0) seconds = seconds.setScale(0);
+                return new Rational(seconds.unscaledValue().longValueExact(),
+                        BigDecimal.TEN.pow(seconds.scale()).longValueExact());
+            }
 
-        return calculateEquivalentFocalLength(realFocal, model);
+            int split = description.indexOf(separator);
+            return new Rational(parseDigits(description, 0, split, separator),
+                    parseDigits(description, split + 1, description.length(), separator));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
     }
 
-    private String calculateEquivalentFocalLength(String focalStr, String model) {
-        if (focalStr == null || model == null) return null;
+    // Digits of value[from, to) ignoring everything else, up to the next separator
+    private static long parseDigits(String value, int from, int to, char separator) {
+        long result = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == separator) break;
+            if (c >= '0' && c <= '9') {
+                result = Math.addExact(Math.multiplyExact(result, 10), c - '0');
+                digits++;
+            }
+        }
+        if (digits == 0) throw new NumberFormatException("No digits in " + value);
+        return result;
+    }
 
-        Double focal = parseDouble(focalStr);
-        Double cropFactor = CropFactorDatabase.getCropFactor(model);
+    // The focal length as names have always read it: from the tag's description ("26",
+    // "5.58", "1353/200") with everything but digits and dots dropped. A fraction the
+    // library doesn't show as a short decimal thus reads as one big number.
+    static double parseFocalLength(String description) {
+        if (description == null) return Double.NaN;
 
-        if (focal != null && cropFactor != null) {
-            return String.valueOf((int) Math.round(focal * cropFactor));
+        StringBuilder number = new StringBuilder();
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+            if (c >= '0' && c <= '9' || c == '.') {
+                number.append(c);
+            }
         }
 
-        return null;
-    }
-
-    private Double parseDouble(String str) {
         try {
-            return Double.parseDouble(str.replaceAll("[^0-9.]", ""));
+            return Double.parseDouble(number.toString());
         } catch (NumberFormatException e) {
-            return null;
+            return Double.NaN;
+        }
+    }
+
+    // A 35mm tag wins even when it is 0, which names show as "Unknown"
+    static void resolveFocalLength(PhotoMetadata.PhotoMetadataBuilder builder, int focal35, double realFocal, String model) {
+        if (focal35 != PhotoMetadata.NO_VALUE) {
+            builder.focalLength(focal35);
+            return;
+        }
+
+        // Calculate from crop factor
+        if (Double.isNaN(realFocal)) return;
+        builder.realFocalLength(realFocal);
+        if (model == null) return;
+
+        Double cropFactor = CropFactorDatabase.getCropFactor(model);
+        if (cropFactor != null) {
+            builder.focalLength((int) Math.round(realFocal * cropFactor)).focalEstimated(true);
         }
     }
 }
@@ -0,0 +1,518 @@
+package com.samfort.photorenamer;
+
+import com.drew.lang.Rational;
+import com.drew.lang.RandomAccessReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.exif.ExifDirectoryBase;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifImageDirectory;
+import com.drew.metadata.exif.ExifInteropDirectory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Fast path: walks the TIFF/EXIF IFDs of JPEG, TIFF-based RAW and HEIC files and decodes
+// only the tags the renamer uses. Mirrors what the metadata-extractor path would report
+// for the same file; returns null whenever the layout is not fully understood, so the
+// caller can fall back to the full library parse.
+class ExifTagParser {
+
+    private static final int TIFF_FORMAT_STRING = 2;
+    private static final int TIFF_FORMAT_SHORT = 3;
+    private static final int TIFF_FORMAT_LONG = 4;
+    private static final int TIFF_FORMAT_RATIONAL = 5;
+    private static final int TIFF_FORMAT_SRATIONAL = 10;
+    private static final int TIFF_FORMAT_IFD = 13;
+
+    private static final int TIFF_MARKER_STANDARD = 0x002A;
+    private static final int TIFF_MARKER_OLYMPUS = 0x4F52;
+    private static final int TIFF_MARKER_OLYMPUS2 = 0x5352;
+
+    private static final int JPEG_MARKER_APP1 = 0xE1;
+    private static final int JPEG_MARKER_SOS = 0xDA;
+    private static final int JPEG_MARKER_EOI = 0xD9;
+
+    private static final Set<String> HEIF_BRANDS = Set.of("heic", "heix", "hevc", "hevx", "mif1", "msf1");
+
+    private final ReadStatistics statistics;
+
+    ExifTagParser(ReadStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    PhotoMetadata parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelRandomAccessReader reader = new ChannelRandomAccessReader(channel, channel.size());
+            try {
+                long tiffStart = locateTiffHeader(reader);
+                return tiffStart < 0 ? null : parseTiff(reader, (int) tiffStart);
+            } finally {
+                statistics.record(reader.getBytesRead());
+            }
+        }
+    }
+
+    private long locateTiffHeader(RandomAccessReader reader) throws IOException {
+        if (reader.getLength() < 12) return -1;
+
+        reader.setMotorolaByteOrder(true);
+        int first = reader.getUInt16(0);
+
+        if (first == 0xFFD8) return locateInJpeg(reader);
+        if (first == 0x4949 || first == 0x4D4D) return 0;
+        if ("ftyp".equals(reader.getString(4, 4, StandardCharsets.US_ASCII))) return locateInHeif(reader);
+
+        return -1;
+    }
+
+    private long locateInJpeg(RandomAccessReader reader) throws IOException {
+        int pos = 2;
+        while (pos + 4 <= reader.getLength()) {
+            if (reader.getUInt8(pos) != 0xFF) return -1;
+
+            // Skip fill bytes between segments
+            int marker = reader.getUInt8(pos + 1);
+            while (marker == 0xFF) {
+                pos++;
+                marker = reader.getUInt8(pos + 1);
+            }
+
+            if (marker == JPEG_MARKER_SOS || marker == JPEG_MARKER_EOI) return -1;
+
+            int segmentLength = reader.getUInt16(pos + 2);
+            if (segmentLength < 2) return -1;
+
+            if (marker == JPEG_MARKER_APP1 && segmentLength >= 8
+                    && "Exif\0\0".equals(reader.getString(pos + 4, 6, StandardCharsets.US_ASCII))) {
+                return pos + 10;
+            }
+
+            pos += 2 + segmentLength;
+        }
+        return -1;
+    }
+
+    private long locateInHeif(RandomAccessReader reader) throws IOException {
+        if (!HEIF_BRANDS.contains(reader.getString(8, 4, StandardCharsets.US_ASCII))) return -1;
+
+        // Top-level boxes: find 'meta'
+        long pos = 0;
+        long metaStart = -1, metaEnd = -1;
+        while (pos + 8 <= reader.getLength()) {
+            long size = reader.getUInt32((int) pos);
+            String type = reader.getString((int) pos + 4, 4, StandardCharsets.US_ASCII);
+            if (size < 8) return -1;
+
+            if ("meta".equals(type)) {
+                metaStart = pos + 12; // box header + full box version/flags
+                metaEnd = pos + size;
+                break;
+            }
+            pos += size;
+        }
+        if (metaStart < 0) return -1;
+
+        // Inside 'meta': the Exif item id comes from 'iinf', its location from 'iloc'
+        long exifItemId = -1;
+        long ilocStart = -1;
+        pos = metaStart;
+        while (pos + 8 <= metaEnd) {
+            long size = reader.getUInt32((int) pos);
+            String type = reader.getString((int) pos + 4, 4, StandardCharsets.US_ASCII);
+            if (size < 8) return -1;
+
+            if ("iinf".equals(type)) {
+                exifItemId = findExifItemId(reader, pos, pos + size);
+            } else if ("iloc".equals(type)) {
+                ilocStart = pos;
+            }
+            pos += size;
+        }
+        if (exifItemId < 0 || ilocStart < 0) return -1;
+
+        long exifOffset = findItemOffset(reader, ilocStart, exifItemId);
+        if (exifOffset < 0 || exifOffset + 4 > reader.getLength()) return -1;
+
+        // Exif item payload starts with the offset of the TIFF header within it
+        return exifOffset + 4 + reader.getUInt32((int) exifOffset);
+    }
+
+    private long findExifItemId(RandomAccessReader reader, long boxStart, long boxEnd) throws IOException {
+        int version = reader.getUInt8((int) boxStart + 8);
+        long pos = boxStart + 12 + (version == 0 ? 2 : 4);
+
+        while (pos + 8 <= boxEnd) {
+            long size = reader.getUInt32((int) pos);
+            if (size < 8) return -1;
+
+            if ("infe".equals(reader.getString((int) pos + 4, 4, StandardCharsets.US_ASCII))) {
+                int infeVersion = reader.getUInt8((int) pos + 8);
+                if (infeVersion >= 2) {
+                    int p = (int) pos + 12;
+                    long itemId = infeVersion == 2 ? reader.getUInt16(p) : reader.getUInt32(p);
+                    p += (infeVersion == 2 ? 2 : 4) + 2; // item id + protection index
+                    if ("Exif".equals(reader.getString(p, 4, StandardCharsets.US_ASCII))) {
+                        return itemId;
+                    }
+                }
+            }
+            pos += size;
+        }
+        return -1;
+    }
+
+    private long findItemOffset(RandomAccessReader reader, long boxStart, long itemId) throws IOException {
+        int version = reader.getUInt8((int) boxStart + 8);
+        int pos = (int) boxStart + 12;
+
+        int sizes = reader.getUInt8(pos++);
+        int offsetSize = sizes >> 4;
+        int lengthSize = sizes & 0x0F;
+        sizes = reader.getUInt8(pos++);
+        int baseOffsetSize = sizes >> 4;
+        int indexSize = (version == 1 || version == 2) ? sizes & 0x0F : 0;
+
+        long itemCount;
+        if (version < 2) {
+            itemCount = reader.getUInt16(pos);
+            pos += 2;
+        } else {
+            itemCount = reader.getUInt32(pos);
+            pos += 4;
+        }
+
+        for (long i = 0; i < itemCount; i++) {
+            long id;
+            if (version < 2) {
+                id = reader.getUInt16(pos);
+                pos += 2;
+            } else {
+                id = reader.getUInt32(pos);
+                pos += 4;
+            }
+
+            int constructionMethod = 0;
+            if (version == 1 || version == 2) {
+                constructionMethod = reader.getUInt16(pos) & 0x0F;
+                pos += 2;
+            }
+            pos += 2; // data reference index
+
+            long baseOffset = readSized(reader, pos, baseOffsetSize);
+            pos += baseOffsetSize;
+
+            int extentCount = reader.getUInt16(pos);
+            pos += 2;
+
+            long firstOffset = -1;
+            for (int j = 0; j < extentCount; j++) {
+                pos += indexSize;
+                long extentOffset = readSized(reader, pos, offsetSize);
+                pos += offsetSize + lengthSize;
+                if (j == 0) firstOffset = extentOffset;
+            }
+
+            if (id == itemId) {
+                // Only plain file offsets are understood
+                return constructionMethod == 0 && extentCount >= 1 ? baseOffset + firstOffset : -1;
+            }
+        }
+        return -1;
+    }
+
+    private long readSized(RandomAccessReader reader, int pos, int size) throws IOException {
+        return switch (size) {
+            case 0 -> 0;
+            case 1 -> reader.getUInt8(pos);
+            case 2 -> reader.getUInt16(pos);
+            case 4 -> reader.getUInt32(pos);
+            case 8 -> reader.getInt64(pos);
+            default -> throw new IOException("Unsupported field size " + size);
+        };
+    }
+
+    private PhotoMetadata parseTiff(RandomAccessReader reader, int tiffStart) throws IOException {
+        int byteOrder = reader.getUInt16(tiffStart);
+        if (byteOrder == 0x4D4D) {
+            reader.setMotorolaByteOrder(true);
+        } else if (byteOrder == 0x4949) {
+            reader.setMotorolaByteOrder(false);
+        } else {
+            return null;
+        }
+
+        // RW2 (0x0055) keeps its IFD0 in a Panasonic-specific directory
+        int marker = reader.getUInt16(tiffStart + 2);
+        if (marker != TIFF_MARKER_STANDARD && marker != TIFF_MARKER_OLYMPUS && marker != TIFF_MARKER_OLYMPUS2) {
+            return null;
+        }
+
+        IfdWalk walk = new IfdWalk(reader, tiffStart);
+        if (!walk.walkIfd0(tiffStart + reader.getInt32(tiffStart + 4))) return null;
+
+        return walk.toMetadata();
+    }
+
+    // Decoded values of one IFD, typed as metadata-extractor stores them
+    private static class Ifd {
+        final boolean makernote;
+        String model;
+        String dateTime;
+        String dateTimeOriginal;
+        Rational focalLength;
+        Rational fNumber;
+        Rational exposureTime;
+        Long iso;
+        Long focal35;
+
+        Ifd(boolean makernote) {
+            this.makernote = makernote;
+        }
+    }
+
+    private static class IfdWalk {
+        private final RandomAccessReader reader;
+        private final int tiffStart;
+        private final Set<Integer> visited = new HashSet<>();
+        // Same order in which metadata-extractor adds its directories
+        private final List<Ifd> directories = new ArrayList<>();
+        private Ifd ifd0;
+        private Ifd firstSubIfd;
+
+        IfdWalk(RandomAccessReader reader, int tiffStart) {
+            this.reader = reader;
+            this.tiffStart = tiffStart;
+        }
+
+        boolean walkIfd0(int offset) throws IOException {
+            ifd0 = new Ifd(false);
+            directories.add(ifd0);
+            int next = walkIfd(offset, ifd0, ExifIFD0Directory.class);
+            if (next < 0) return false;
+
+            // Follower IFDs (thumbnails) only matter when a field is still missing
+            while (next > 0 && hasUnresolvedField()) {
+                Ifd follower = new Ifd(false);
+                directories.add(follower);
+                next = walkIfd(next, follower, ExifImageDirectory.class);
+                if (next < 0) return false;
+            }
+            return true;
+        }
+
+        // Returns the absolute offset of the next IFD, 0 when there is none, -1 when unsupported.
+        // The type is the directory the library would file this IFD under.
+        private int walkIfd(int offset, Ifd ifd, Class<? extends Directory> type) throws IOException {
+            if (!visited.add(offset)) return 0;
+
+            int count = reader.getUInt16(offset);
+            if (count > 0xFF && (count & 0xFF) == 0) return -1; // byte order switched mid-file
+
+            for (int i = 0; i < count; i++) {
+                int entry = offset + 2 + 12 * i;
+                int tag = reader.getUInt16(entry);
+                int format = reader.getUInt16(entry + 2);
+                long components = reader.getUInt32(entry + 4);
+
+                if (tag == ExifDirectoryBase.TAG_SUB_IFD_OFFSET
+                        || (type == ExifIFD0Directory.class && tag == ExifIFD0Directory.TAG_EXIF_SUB_IFD_OFFSET)) {
+                    if (!walkSubIfds(entry, format, components, ExifSubIFDDirectory.class)) return -1;
+                    continue;
+                }
+
+                // GPS and interop IFDs share the EXIF tag ids, so the library looks there too
+                if (type == ExifIFD0Directory.class && tag == ExifIFD0Directory.TAG_GPS_INFO_OFFSET) {
+                    if (!walkSubIfds(entry, format, components, GpsDirectory.class)) return -1;
+                    continue;
+                }
+                if (type == ExifSubIFDDirectory.class && tag == ExifSubIFDDirectory.TAG_INTEROP_OFFSET) {
+                    if (!walkSubIfds(entry, format, components, ExifInteropDirectory.class)) return -1;
+                    continue;
+                }
+
+                if (type == ExifSubIFDDirectory.class && tag == ExifSubIFDDirectory.TAG_MAKERNOTE) {
+                    directories.add(new Ifd(true));
+                    continue;
+                }
+
+                if (!readTag(ifd, tag, format, components, entry)) return -1;
+            }
+
+            int next = reader.getInt32(offset + 2 + 12 * count);
+            if (next == 0) return 0;
+
+            next += tiffStart;
+            return next >= reader.getLength() || next < offset ? 0 : next;
+        }
+
+        private boolean walkSubIfds(int entry, int format, long components,
+                                    Class<? extends Directory> type) throws IOException {
+            if (format != TIFF_FORMAT_LONG && format != TIFF_FORMAT_IFD) return false;
+
+            int valueOffset = components > 1 ? tiffStart + reader.getInt32(entry + 8) : entry + 8;
+            for (int i = 0; i < components; i++) {
+                Ifd sub = new Ifd(false);
+                directories.add(sub);
+                if (firstSubIfd == null && type == ExifSubIFDDirectory.class) firstSubIfd = sub;
+
+                if (walkIfd(tiffStart + reader.getInt32(valueOffset + 4 * i), sub, type) < 0) return false;
+            }
+            return true;
+        }
+
+        private boolean readTag(Ifd ifd, int tag, int format, long components, int entry) throws IOException {
+            switch (tag) {
+                case ExifDirectoryBase.TAG_MODEL -> ifd.model = readString(format, components, entry);
+                case ExifDirectoryBase.TAG_DATETIME -> ifd.dateTime = readString(format, components, entry);
+                case ExifDirectoryBase.TAG_DATETIME_ORIGINAL -> ifd.dateTimeOriginal = readString(format, components, entry);
+                case ExifDirectoryBase.TAG_FOCAL_LENGTH -> ifd.focalLength = readRational(format, components, entry);
+                case ExifDirectoryBase.TAG_FNUMBER -> ifd.fNumber = readRational(format, components, entry);
+                case ExifDirectoryBase.TAG_EXPOSURE_TIME -> ifd.exposureTime = readRational(format, components, entry);
+                case ExifDirectoryBase.TAG_ISO_EQUIVALENT -> ifd.iso = readInteger(format, components, entry);
+                case ExifDirectoryBase.TAG_35MM_FILM_EQUIV_FOCAL_LENGTH -> ifd.focal35 = readInteger(format, components, entry);
+                default -> {
+                    return true;
+                }
+            }
+
+            // A wanted tag in a form we don't decode: let the library handle the file
+            return switch (tag) {
+                case ExifDirectoryBase.TAG_MODEL -> ifd.model != null;
+                case ExifDirectoryBase.TAG_DATETIME -> ifd.dateTime != null;
+                case ExifDirectoryBase.TAG_DATETIME_ORIGINAL -> ifd.dateTimeOriginal != null;
+                case ExifDirectoryBase.TAG_FOCAL_LENGTH -> ifd.focalLength != null;
+                case ExifDirectoryBase.TAG_FNUMBER -> ifd.fNumber != null;
+                case ExifDirectoryBase.TAG_EXPOSURE_TIME -> ifd.exposureTime != null;
+                case ExifDirectoryBase.TAG_ISO_EQUIVALENT -> ifd.iso != null;
+                default -> ifd.focal35 != null;
+            };
+        }
+
+        private String readString(int format, long components, int entry) throws IOException {
+            if (format != TIFF_FORMAT_STRING) return null;
+
+            int valueOffset = components > 4 ? tiffStart + reader.getInt32(entry + 8) : entry + 8;
+            return reader.getNullTerminatedStringValue(valueOffset, (int) components, null).toString();
+        }
+
+        private Rational readRational(int format, long components, int entry) throws IOException {
+            if (components != 1) return null;
+
+            int valueOffset = tiffStart + reader.getInt32(entry + 8);
+            if (format == TIFF_FORMAT_RATIONAL) {
+                return new Rational(reader.getUInt32(valueOffset), reader.getUInt32(valueOffset + 4));
+            }
+            if (format == TIFF_FORMAT_SRATIONAL) {
+                return new Rational(reader.getInt32(valueOffset), reader.getInt32(valueOffset + 4));
+            }
+            return null;
+        }
+
+        private Long readInteger(int format, long components, int entry) throws IOException {
+            if (components != 1) return null;
+
+            if (format == TIFF_FORMAT_SHORT) return (long) reader.getUInt16(entry + 8);
+            if (format == TIFF_FORMAT_LONG) return reader.getUInt32(entry + 8);
+            return null;
+        }
+
+        private boolean hasUnresolvedField() {
+            return findFirst(ifd -> ifd.fNumber) == null
+                    || findFirst(ifd -> ifd.exposureTime) == null
+                    || findFirst(ifd -> ifd.iso) == null
+                    || findFirst(ifd -> ifd.focal35) == null;
+        }
+
+        // Lookup over EXIF directories in order, as the library path does
+        private <T> T findFirst(Function<Ifd, T> field) {
+            for (Ifd ifd : directories) {
+                T value = ifd.makernote ? null : field.apply(ifd);
+                if (value != null) return value;
+            }
+            return null;
+        }
+
+        // Some maker notes reuse the "F-Number" and "Exposure Time" tag names; the library
+        // would report those when no earlier EXIF directory has the tag
+        private boolean makernoteComesFirst(Function<Ifd, ?> field) {
+            for (Ifd ifd : directories) {
+                if (ifd.makernote) return true;
+                if (field.apply(ifd) != null) return false;
+            }
+            return false;
+        }
+
+        PhotoMetadata toMetadata() {
+            if (makernoteComesFirst(ifd -> ifd.fNumber) || makernoteComesFirst(ifd -> ifd.exposureTime)) {
+                return null;
+            }
+
+            PhotoMetadata.PhotoMetadataBuilder builder = PhotoMetadata.builder().model(ifd0.model);
+            Rational focalLength = null;
+            try {
+                String date = null;
+                if (firstSubIfd != null) {
+                    date = firstSubIfd.dateTimeOriginal;
+                    focalLength = firstSubIfd.focalLength;
+                }
+                if (date == null) date = ifd0.dateTime;
+                if (date != null) builder.captureTime(parseDate(date));
+            } catch (DateTimeException | NumberFormatException e) {
+                return null;
+            }
+
+            Rational fNumber = findFirst(ifd -> ifd.fNumber);
+            if (fNumber != null) {
+                builder.apertureTenths(ExifMetadataService.apertureTenths(fNumber.doubleValue()));
+            }
+
+            Rational exposure = findFirst(ifd -> ifd.exposureTime);
+            if (exposure != null) {
+                builder.exposureNumerator(exposure.getNumerator()).exposureDenominator(exposure.getDenominator());
+            }
+
+            builder.iso(nonNegative(findFirst(ifd -> ifd.iso)));
+            ExifMetadataService.resolveFocalLength(builder, nonNegative(findFirst(ifd -> ifd.focal35)),
+                    focalLength == null ? Double.NaN
+                            : ExifMetadataService.parseFocalLength(focalLength.toSimpleString(true)),
+                    ifd0.model);
+
+            return builder.build();
+        }
+
+        // Same int conversion the library applies to unsigned values
+        private static int nonNegative(Long value) {
+            return value == null || value.intValue() < 0 ? PhotoMetadata.NO_VALUE : value.intValue();
+        }
+    }
+
+    // Strict "yyyy:MM:dd HH:mm:ss" to epoch seconds (UTC); anything else goes through the library's lenient parser
+    private static long parseDate(String value) {
+        if (value.length() != 19 || value.charAt(4) != ':' || value.charAt(7) != ':'
+                || value.charAt(10) != ' ' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            throw new DateTimeException("Unsupported date format: " + value);
+        }
+
+        return LocalDateTime.of(
+                Integer.parseInt(value, 0, 4, 10),
+                Integer.parseInt(value, 5, 7, 10),
+                Integer.parseInt(value, 8, 10, 10),
+                Integer.parseInt(value, 11, 13, 10),
+                Integer.parseInt(value, 14, 16, 10),
+                Integer.parseInt(value, 17, 19, 10)
+        ).toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,8 @@
+package com.samfort.photorenamer;
+
+public enum ExtractionMode {
+    // Full metadata-extractor parse
+    LIBRARY,
+    // Targeted IFD walk for the tags used in file names, library parse as fallback
+    FAST
+}
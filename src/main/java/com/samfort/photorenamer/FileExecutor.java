@@ -0,0 +1,18 @@
+package com.samfort.photorenamer;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+// Runs the task for one file. Implementations decide on which thread and when,
+// e.g. after a per-storage concurrency limit lets it through.
+interface FileExecutor {
+
+    void execute(Path file, Runnable task);
+
+    default void shutdown() {
+    }
+
+    static FileExecutor of(Executor executor) {
+        return (file, task) -> executor.execute(task);
+    }
+}
@@ -1,28 +1,68 @@
 package com.samfort.photorenamer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.time.ZonedDateTime;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class FileRenameService {
+    // Files queued or in progress at once in streaming mode
+    static final int STREAMING_IN_FLIGHT_LIMIT = 1024;
+    private static final int TOTAL_UPDATE_INTERVAL = 1000;
+    // Stands for a file dropped by a cancelled job in the result queue of runBatch
+    private static final RenameResult NOT_STARTED = RenameResult.skipped("-", "Cancelled");
+    // Returned by a task whose move was handed to the journal; the result comes later
+    private static final RenameResult DEFERRED = RenameResult.skipped("-", "Waiting for the journal");
+
     private final ExifMetadataService exifService;
     private final FilenameFormatter formatter;
     private final ExecutorService executor;
+    private final RunStatistics statistics = new RunStatistics();
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    // The work on one file. A journaled move returns DEFERRED and hands the move to later
+    // once its BEGIN record is on disk.
+    private interface FileTask<T> {
+        RenameResult run(T item, FileTrace trace, Continuation later);
+    }
+
+    // Runs the rest of a deferred file on the run's move executor and reports its result
+    private interface Continuation {
+        void resume(Supplier<RenameResult> rest);
+    }
 
     public FileRenameService() {
-        this.exifService = new ExifMetadataService();
+        this(new ExifMetadataService());
+    }
+
+    // Metadata of unchanged files is taken from the cache instead of being parsed again
+    public FileRenameService(MetadataCache cache) {
+        this(new ExifMetadataService(cache));
+    }
+
+    FileRenameService(ExifMetadataService exifService) {
+        this.exifService = exifService;
         this.formatter = new FilenameFormatter();
         this.executor = Executors.newFixedThreadPool(
                 Runtime.getRuntime().availableProcessors()
@@ -30,90 +70,489 @@ public class FileRenameService {
     }
 
     public void renamePhotos(RenameConfig config, ProgressListener listener) {
-        List<Path> files = collectFiles(config);
-        listener.onStart(files.size());
+        run(config, listener, null, openJournal(config), Set.of(), new RenameJob());
+    }
 
-        List<Future<RenameResult>> futures = new ArrayList<>();
-        for (Path file : files) {
-            futures.add(executor.submit(() -> processFile(file, config.isDryRun())));
-        }
+    // The methods below run in the background and return at once. A dry run also keeps
+    // its plan in the job. ProgressListener.onFailed reports a run that stopped as a whole.
+    public RenameJob start(RenameConfig config, ProgressListener listener) {
+        return launch(listener, job -> {
+            if (config.isDryRun()) {
+                plan(config, listener, job);
+            } else {
+                run(config, listener, null, openJournal(config), Set.of(), job);
+            }
+        });
+    }
+
+    public RenameJob start(RenamePlan plan, ProgressListener listener) {
+        return launch(listener, job -> execute(plan, listener, job));
+    }
 
-        int renamed = 0, skipped = 0, errors = 0;
+    public RenameJob startResume(Path journalFile, RenameConfig settings, ProgressListener listener) {
+        return launch(listener, job -> resume(journalFile, settings, listener, job));
+    }
+
+    public RenameJob startUndo(Path journalFile, ProgressListener listener) {
+        return launch(listener, job -> undo(journalFile, listener, job));
+    }
+
+    private interface JobBody {
+        void run(RenameJob job) throws IOException;
+    }
 
-        for (Future<RenameResult> future : futures) {
+    private RenameJob launch(ProgressListener listener, JobBody body) {
+        RenameJob job = new RenameJob();
+        new Thread(() -> {
+            Exception failure = null;
             try {
-                RenameResult result = future.get();
-                listener.onProgress(result);
+                body.run(job);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                listener.onFailed(e);
+            } finally {
+                job.finish(failure);
+            }
+        }, "photo-renamer-job").start();
+        return job;
+    }
+
+    // Continues a run that was interrupted, with the settings stored in its journal. Files
+    // renamed before the interruption are recognized by name and not read again.
+    public void resume(Path journalFile, RenameConfig settings, ProgressListener listener) throws IOException {
+        resume(journalFile, settings, listener, new RenameJob());
+    }
+
+    private void resume(Path journalFile, RenameConfig settings, ProgressListener listener, RenameJob job)
+            throws IOException {
+        RenameJournal.Contents contents = RenameJournal.read(journalFile);
+        if (contents.isComplete()) {
+            throw new IllegalStateException("The last run was not interrupted");
+        }
+        RenameJournal journal = RenameJournal.resume(journalFile, contents);
 
-                switch (result.getStatus()) {
-                    case SUCCESS: renamed++; break;
-                    case SKIPPED: skipped++; break;
-                    case ERROR: errors++; break;
+        Set<Path> renamed = new HashSet<>();
+        for (RenameJournal.Entry entry : contents.getEntries()) {
+            if (entry.isMoved()) {
+                renamed.add(entry.getTarget());
+            }
+        }
+        run(contents.toConfig(settings.toBuilder().journalFile(journalFile).build()), listener, null, journal, renamed,
+                job);
+    }
+
+    // Moves the files of a journaled run back to their old names. Renames are independent
+    // unless a file took the name another one gave up; those wait until the rest are undone
+    // and then go one by one, newest first. The journal is deleted once nothing failed.
+    public void undo(Path journalFile, ProgressListener listener) throws IOException {
+        undo(journalFile, listener, new RenameJob());
+    }
+
+    private void undo(Path journalFile, ProgressListener listener, RenameJob job) throws IOException {
+        List<RenameJournal.Entry> moved = new ArrayList<>();
+        Set<Path> targets = new HashSet<>();
+        for (RenameJournal.Entry entry : RenameJournal.read(journalFile).getEntries()) {
+            if (entry.isMoved()) {
+                moved.add(entry);
+                targets.add(entry.getTarget());
+            }
+        }
+
+        List<RenameJournal.Entry> independent = new ArrayList<>();
+        List<RenameJournal.Entry> chained = new ArrayList<>();
+        for (RenameJournal.Entry entry : moved) {
+            (targets.contains(entry.getSource()) ? chained : independent).add(entry);
+        }
+
+        exifService.getReadStatistics().reset();
+        statistics.start();
+        metrics.start(false);
+
+        listener.onStart(moved.size());
+        FileTask<RenameJournal.Entry> task = (entry, trace, later) -> undoMove(entry);
+        runBatch(independent, RenameJournal.Entry::getTarget, task, listener, FileExecutor.of(executor), executor,
+                job);
+        for (int i = chained.size() - 1; i >= 0; i--) {
+            RenameJournal.Entry entry = chained.get(i);
+            processAndRecord(entry.getTarget(), entry, job, task, executor, result -> {
+                if (result != null) {
+                    listener.onProgress(result);
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                errors++;
-                listener.onProgress(RenameResult.error("Unknown", e.getMessage()));
+            });
+        }
+
+        if (statistics.getErrors() == 0 && !job.isCancelled()) {
+            Files.deleteIfExists(journalFile);
+        }
+        finish(listener);
+    }
+
+    // Dry run that also records what would be renamed, for executePlan
+    public RenamePlan planRenames(RenameConfig config, ProgressListener listener) {
+        return plan(config, listener, new RenameJob());
+    }
+
+    private RenamePlan plan(RenameConfig config, ProgressListener listener, RenameJob job) {
+        RenameConfig dryRun = config.toBuilder().dryRun(true).build();
+        RenamePlan plan = new RenamePlan(dryRun);
+        // Set first, so it is there when the listener hears onComplete
+        job.setPlan(plan);
+        run(dryRun, listener, plan, null, Set.of(), job);
+        return plan;
+    }
+
+    public void executePlan(RenamePlan plan, ProgressListener listener) {
+        execute(plan, listener, new RenameJob());
+    }
+
+    private void execute(RenamePlan plan, ProgressListener listener, RenameJob job) {
+        RenameConfig config = plan.getConfig().toBuilder().dryRun(false).build();
+        exifService.getReadStatistics().reset();
+        statistics.start();
+        metrics.start(config.isInstrumented());
+
+        NameRegistry names = new NameRegistry();
+        RenameJournal journal = openJournal(config);
+        FileExecutor runExecutor = createExecutor(config);
+        VirtualThreadExecutor moves = createMoveExecutor(config);
+        try {
+            List<RenamePlan.Entry> entries = plan.getEntries();
+            listener.onStart(entries.size());
+            runBatch(entries, RenamePlan.Entry::getSource,
+                    (entry, trace, later) -> executePlanned(entry, config, names, journal, trace, later),
+                    listener, runExecutor, moves, job);
+            completeJournal(journal, job);
+        } finally {
+            runExecutor.shutdown();
+            moves.shutdown();
+            closeJournal(journal);
+        }
+
+        finish(listener);
+    }
+
+    // Files in alreadyRenamed are reported as skipped without being read
+    private void run(RenameConfig config, ProgressListener listener, RenamePlan plan, RenameJournal journal,
+                     Set<Path> alreadyRenamed, RenameJob job) {
+        exifService.getReadStatistics().reset();
+        statistics.start();
+        metrics.start(config.isInstrumented());
+
+        NameRegistry names = new NameRegistry();
+        AtomicLong matchingNames = new AtomicLong();
+        FileTask<Path> task = (file, trace, later) -> {
+            if (alreadyRenamed.contains(file)) {
+                return RenameResult.skipped(file.getFileName().toString(), "Renamed before the interruption");
+            }
+            if (skipsAsNamed(file, config, matchingNames)) {
+                return RenameResult.skipped(file.getFileName().toString(), "Name already matches the template");
             }
+            return processFile(file, config, plan, names, journal, trace, later);
+        };
+        FileExecutor runExecutor = createExecutor(config);
+        VirtualThreadExecutor moves = createMoveExecutor(config);
+        try {
+            if (config.isStreaming()) {
+                renameStreaming(config, listener, runExecutor, moves, task, job);
+            } else {
+                long walkStart = System.nanoTime();
+                List<Path> files = collectFiles(config);
+                metrics.recordWalk(System.nanoTime() - walkStart);
+                listener.onStart(files.size());
+                runBatch(files, Function.identity(), task, listener, runExecutor, moves, job);
+            }
+            completeJournal(journal, job);
+        } finally {
+            runExecutor.shutdown();
+            moves.shutdown();
+            closeJournal(journal);
         }
 
-        listener.onComplete(renamed, skipped, errors);
+        finish(listener);
     }
 
-    private List<Path> collectFiles(RenameConfig config) {
-        List<Path> files = new ArrayList<>();
-        int maxDepth = config.isRecursive() ? Integer.MAX_VALUE : 1;
+    // A dry run changes nothing, so it has nothing to journal
+    private static RenameJournal openJournal(RenameConfig config) {
+        if (config.isDryRun() || config.getJournalFile() == null) {
+            return null;
+        }
 
-        try (Stream<Path> stream = Files.walk(config.getTargetFolder(), maxDepth)) {
-            stream.filter(Files::isRegularFile)
-                    .filter(this::isSupportedImageFile)
-                    .forEach(files::add);
+        try {
+            return RenameJournal.create(config.getJournalFile(), config);
         } catch (IOException e) {
-            // Return empty list on error
+            // Renaming without a journal would make the run impossible to undo
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Left incomplete if the run was cancelled or interrupted, so it can be resumed
+    private static void completeJournal(RenameJournal journal, RenameJob job) {
+        if (journal == null || job.isCancelled() || Thread.currentThread().isInterrupted()) {
+            return;
         }
 
-        return files;
+        try {
+            journal.complete();
+        } catch (IOException e) {
+            // Every rename is already on disk; the run just looks interrupted to resume()
+        }
     }
 
-    private boolean isSupportedImageFile(Path path) {
-        String filename = path.toString().toLowerCase();
-        int dotIndex = filename.lastIndexOf('.');
+    private static void closeJournal(RenameJournal journal) {
+        if (journal == null) {
+            return;
+        }
 
-        if (dotIndex < 0) return false;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // Only DONE records can be lost, moves are then checked on disk
+        }
+    }
 
-        String extension = filename.substring(dotIndex);
-        return Constants.SUPPORTED_EXTENSIONS.contains(extension);
+    private void finish(ProgressListener listener) {
+        statistics.finish();
+        exifService.flushCache();
+        listener.onReadStatistics(exifService.getReadStatistics());
+        if (metrics.isEnabled()) {
+            listener.onMetrics(getMetrics());
+        }
+        listener.onComplete(statistics.getRenamed(), statistics.getSkipped(), statistics.getErrors());
+    }
+
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    // Stage timing of the current or last run; empty unless it was instrumented
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot(statistics, exifService.getReadStatistics());
+    }
+
+    private FileExecutor createExecutor(RenameConfig config) {
+        return switch (config.getExecutionMode()) {
+            case FIXED_POOL -> FileExecutor.of(executor);
+            case VIRTUAL_THREADS -> new VirtualThreadExecutor(config.getMaxConcurrency());
+            case ADAPTIVE -> new AdaptiveStoreScheduler(config.getMaxConcurrency(), statistics);
+            case LOCALITY -> new LocalityScheduler(Runtime.getRuntime().availableProcessors());
+        };
+    }
+
+    // Journaled moves run here once their BEGIN record is durable, as many at once as the
+    // run's workers. Not on the workers themselves: while the job is paused those block in
+    // admit(), and a move queued behind them would never finish.
+    private static VirtualThreadExecutor createMoveExecutor(RenameConfig config) {
+        return new VirtualThreadExecutor(switch (config.getExecutionMode()) {
+            case FIXED_POOL, LOCALITY -> Runtime.getRuntime().availableProcessors();
+            case VIRTUAL_THREADS, ADAPTIVE -> config.getMaxConcurrency();
+        });
+    }
+
+    // Workers hand results over through a queue as they finish (completion order),
+    // so one slow file doesn't hold back progress for the rest
+    private <T> void runBatch(List<T> items, Function<T, Path> fileOf, FileTask<T> task,
+                              ProgressListener listener, FileExecutor executor, Executor moves, RenameJob job) {
+        BlockingQueue<RenameResult> completed = new LinkedBlockingQueue<>();
+        int submitted = 0;
+        for (T item : items) {
+            if (job.isCancelled()) {
+                break;
+            }
+            Path file = fileOf.apply(item);
+            executor.execute(file, () -> processAndRecord(file, item, job, task, moves,
+                    result -> completed.add(result != null ? result : NOT_STARTED)));
+            submitted++;
+        }
+
+        for (int i = 0; i < submitted; i++) {
+            try {
+                RenameResult result = completed.take();
+                if (result != NOT_STARTED) {
+                    listener.onProgress(result);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Walker feeds workers directly; the semaphore blocks it once the in-flight limit is reached,
+    // so memory stays constant whatever the size of the tree
+    private void renameStreaming(RenameConfig config, ProgressListener listener, FileExecutor executor,
+                                 Executor moves, FileTask<Path> task, RenameJob job) {
+        listener.onStart(ProgressListener.UNKNOWN_TOTAL);
+
+        Semaphore inFlight = new Semaphore(STREAMING_IN_FLIGHT_LIMIT);
+        AtomicInteger discovered = new AtomicInteger();
+        long walkStart = System.nanoTime();
+
+        // Walker threads block here once enough files are in flight. While paused the walk
+        // waits too; a cancelled job stops walking.
+        DirectoryWalker.walk(config.getTargetFolder(), maxDepth(config), inDiskOrder(config), (file, attributes) -> {
+            if (!job.admit()) {
+                return false;
+            }
+            inFlight.acquireUninterruptibly();
+
+            int count = discovered.incrementAndGet();
+            if (count % TOTAL_UPDATE_INTERVAL == 0) {
+                listener.onTotalUpdated(count, false);
+            }
+
+            // Released when the result is in, which for a journaled move is after the move
+            executor.execute(file, () -> processAndRecord(file, file, job, task, moves, result -> {
+                try {
+                    if (result != null) {
+                        listener.onProgress(result);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }));
+            return true;
+        });
+
+        metrics.recordWalk(System.nanoTime() - walkStart);
+        listener.onTotalUpdated(discovered.get(), true);
+
+        // Wait for the last workers to drain
+        inFlight.acquireUninterruptibly(STREAMING_IN_FLIGHT_LIMIT);
+        inFlight.release(STREAMING_IN_FLIGHT_LIMIT);
+    }
+
+    // Hands the result to report exactly once: on this thread, or on the one that resumed a
+    // journaled move. Null if the job was cancelled before the file was started.
+    private <T> void processAndRecord(Path file, T item, RenameJob job, FileTask<T> task, Executor moves,
+                                      Consumer<RenameResult> report) {
+        if (!job.admit()) {
+            report.accept(null);
+            return;
+        }
+
+        FileTrace trace = metrics.trace(file);
+        Consumer<RenameResult> record = result -> {
+            RenameResult located = result.withSource(file);
+            trace.finish(located);
+            statistics.record(located);
+            job.record(located);
+            report.accept(located);
+        };
+        Continuation later = rest -> {
+            Runnable resumed = () -> record.accept(runTask(file, rest));
+            try {
+                moves.execute(resumed);
+            } catch (RuntimeException e) {
+                // The executor is gone; the caller still waits for this result
+                resumed.run();
+            }
+        };
+        RenameResult result = runTask(file, () -> task.run(item, trace, later));
+        if (result != DEFERRED) {
+            record.accept(result);
+        }
+    }
+
+    private static RenameResult runTask(Path file, Supplier<RenameResult> task) {
+        try {
+            return task.get();
+        } catch (RuntimeException | Error e) {
+            return RenameResult.error(file.getFileName().toString(), String.valueOf(e));
+        }
+    }
+
+    // Decided on the name alone, the file isn't opened or stat'ed. Sampled files take the
+    // normal path: a name that still fits is kept, a stale one is renamed.
+    private static boolean skipsAsNamed(Path file, RenameConfig config, AtomicLong matchingNames) {
+        if (!config.isSkipMatchingNames() || !config.getFilenameTemplate().matches(file.getFileName().toString())) {
+            return false;
+        }
+        int verifyEvery = config.getVerifyEvery();
+        return verifyEvery <= 0 || matchingNames.incrementAndGet() % verifyEvery != 0;
+    }
+
+    private static int maxDepth(RenameConfig config) {
+        return config.isRecursive() ? Integer.MAX_VALUE : 1;
+    }
+
+    private static boolean inDiskOrder(RenameConfig config) {
+        return config.getExecutionMode() == ExecutionMode.LOCALITY;
+    }
+
+    // In disk order the files of a directory stay in a row; LocalityScheduler groups the
+    // directories, however the walker threads interleaved them
+    private List<Path> collectFiles(RenameConfig config) {
+        List<Path> files = Collections.synchronizedList(new ArrayList<>());
+        DirectoryWalker.walk(config.getTargetFolder(), maxDepth(config), inDiskOrder(config),
+                (file, attributes) -> files.add(file));
+        return new ArrayList<>(files);
     }
 
     RenameResult processFile(Path file, boolean dryRun) {
+        return processFile(file, RenameConfig.builder()
+                .targetFolder(file.getParent())
+                .dryRun(dryRun)
+                .build());
+    }
+
+    RenameResult processFile(Path file, RenameConfig config) {
+        return processFile(file, config, null, new NameRegistry(), null, FileTrace.DISABLED, null);
+    }
+
+    // Watch mode: one registry per batch, so each directory is listed once per batch rather
+    // than once per file, and names taken by an earlier batch are seen fresh. Not journaled,
+    // a daemon has no last run to undo.
+    List<RenameResult> renameBatch(List<Path> files, RenameConfig config) {
+        NameRegistry names = new NameRegistry();
+        List<RenameResult> results = new ArrayList<>(files.size());
+        for (Path file : files) {
+            results.add(processFile(file, config, null, names, null, FileTrace.DISABLED, null).withSource(file));
+        }
+        return results;
+    }
+
+    // A dry run with a plan also records each rename together with the source fingerprint.
+    // Target names are reserved in the run's registry, so concurrent workers never share one.
+    private RenameResult processFile(Path file, RenameConfig config, RenamePlan plan, NameRegistry names,
+                                     RenameJournal journal, FileTrace trace, Continuation later) {
         try {
-            // Extract photo date/time
-            Optional<ZonedDateTime> photoTime = exifService.extractPhotoDateTime(file);
-            if (photoTime.isEmpty()) {
+            // Taken before reading, so a change during the dry run is caught on execution;
+            // the journal keeps them to recognize the file on undo
+            BasicFileAttributes attributes = plan != null || journal != null
+                    ? Files.readAttributes(file, BasicFileAttributes.class)
+                    : null;
+
+            // Extract date/time and metadata in a single read
+            trace.begin(Stage.METADATA);
+            PhotoMetadata metadata = exifService.extractMetadata(file, config.getExtractionMode());
+            trace.end();
+            if (!metadata.hasCaptureTime()) {
                 return RenameResult.skipped(file.getFileName().toString(), "No EXIF date");
             }
 
-            // Extract metadata
-            Map<String, String> metadata = exifService.extractPhotoMetadata(file);
-
             // Format new filename
-            String newBaseName = formatter.formatFilename(photoTime.get(), metadata);
+            trace.begin(Stage.FORMAT);
+            String newBaseName = config.getFilenameTemplate().render(metadata);
             String extension = formatter.getFileExtension(file);
+            trace.end();
 
             // Find unique filename
-            Path newPath = findUniqueFilename(file, newBaseName, extension);
+            trace.begin(Stage.RESERVE);
+            Path newPath = names.reserve(file, newBaseName, extension);
+            trace.end();
 
             // Perform rename or dry run
-            if (dryRun) {
+            if (config.isDryRun()) {
+                if (plan != null) {
+                    plan.add(new RenamePlan.Entry(file, newPath, newBaseName, extension,
+                            attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
                 return RenameResult.success(
                         file.getFileName().toString(),
                         newPath.getFileName().toString()
                 );
             } else {
-                Files.move(file, newPath, StandardCopyOption.ATOMIC_MOVE);
-                return RenameResult.success(
-                        file.getFileName().toString(),
-                        newPath.getFileName().toString()
-                );
+                return move(file, newPath, attributes, names, journal, trace, later);
             }
 
         } catch (IOException e) {
@@ -126,22 +565,115 @@ public class FileRenameService {
         }
     }
 
-    private Path findUniqueFilename(Path originalFile, String baseName, String extension) {
-        Path newPath = originalFile.resolveSibling(baseName + extension);
+    private RenameResult executePlanned(RenamePlan.Entry entry, RenameConfig config, NameRegistry names,
+                                        RenameJournal journal, FileTrace trace, Continuation later) {
+        Path source = entry.getSource();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            if (!entry.isUnchanged(attributes)) {
+                return processFile(source, config, null, names, journal, trace, later);
+            }
+
+            // Another file may have taken the name since the dry run
+            trace.begin(Stage.RESERVE);
+            Path target = entry.getTarget();
+            if (!target.equals(source) && !names.tryReserve(target)) {
+                target = names.reserve(source, entry.getBaseName(), entry.getExtension());
+            }
+            trace.end();
+
+            return move(source, target, attributes, names, journal, trace, later);
+        } catch (IOException e) {
+            return RenameResult.error(source.getFileName().toString(), String.valueOf(e.getMessage()));
+        }
+    }
+
+    // A journaled move doesn't wait for its BEGIN record here: the worker returns DEFERRED
+    // and goes on with the next file, the move is queued again once the record is durable
+    private RenameResult move(Path source, Path target, BasicFileAttributes attributes, NameRegistry names,
+                              RenameJournal journal, FileTrace trace, Continuation later)
+            throws IOException {
+        if (journal == null || target.equals(source)) {
+            trace.begin(Stage.MOVE);
+            moveFile(source, target, names);
+            trace.end();
+            return RenameResult.success(source.getFileName().toString(), target.getFileName().toString());
+        }
+
+        journal.begin(source, target, attributes, (id, error) ->
+                later.resume(() -> moveDurable(source, target, names, journal, trace, id, error)));
+        return DEFERRED;
+    }
 
-        // If target equals source or doesn't exist, return it
-        if (newPath.equals(originalFile) || !Files.exists(newPath)) {
-            return newPath;
+    // Runs once the BEGIN record is on disk, or failed to get there
+    private RenameResult moveDurable(Path source, Path target, NameRegistry names, RenameJournal journal,
+                                     FileTrace trace, long journalId, IOException journalError) {
+        String name = source.getFileName().toString();
+        try {
+            if (journalError != null) {
+                names.moved(target, source);
+                return RenameResult.error(name, String.valueOf(journalError.getMessage()));
+            }
+            trace.begin(Stage.MOVE);
+            moveFile(source, target, names);
+            trace.end();
+            journal.done(journalId);
+            return RenameResult.success(name, target.getFileName().toString());
+        } catch (IOException e) {
+            return RenameResult.error(name, String.valueOf(e.getMessage()));
+        } catch (RuntimeException | Error e) {
+            return RenameResult.error(name, String.valueOf(e));
         }
+    }
 
-        // Find unique name with counter
-        int counter = 1;
-        do {
-            newPath = originalFile.resolveSibling(baseName + "_" + counter + extension);
-            counter++;
-        } while (Files.exists(newPath) && !newPath.equals(originalFile));
+    private void moveFile(Path source, Path target, NameRegistry names) throws IOException {
+        if (target.equals(source)) {
+            return;
+        }
 
-        return newPath;
+        long start = System.nanoTime();
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Give the reserved name back, as if the target had moved back to the source
+            names.moved(target, source);
+            throw e;
+        } finally {
+            StorageTimer.add(System.nanoTime() - start);
+        }
+        names.moved(source, target);
+        exifService.onRenamed(source, target);
+    }
+
+    // Only a file that still looks as it did after the rename is moved back, and never
+    // over another file
+    private RenameResult undoMove(RenameJournal.Entry entry) {
+        Path source = entry.getSource();
+        Path target = entry.getTarget();
+        String name = target.getFileName().toString();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            if (!entry.isUnchanged(attributes)) {
+                return RenameResult.skipped(name, "Changed since the rename");
+            }
+            // A case-only rename on a case-insensitive volume finds the file under both names
+            if (Files.exists(source, LinkOption.NOFOLLOW_LINKS) && !Files.isSameFile(source, target)) {
+                return RenameResult.error(name, "Old name is taken: " + source.getFileName());
+            }
+
+            long start = System.nanoTime();
+            try {
+                Files.move(target, source, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                StorageTimer.add(System.nanoTime() - start);
+            }
+            exifService.onRenamed(target, source);
+            return RenameResult.success(name, source.getFileName().toString());
+        } catch (NoSuchFileException e) {
+            return RenameResult.skipped(name, "Not found");
+        } catch (IOException e) {
+            return RenameResult.error(name, String.valueOf(e.getMessage()));
+        }
     }
 
     public void shutdown() {
@@ -0,0 +1,81 @@
+package com.samfort.photorenamer;
+
+import java.nio.file.Path;
+
+// Stage timing of one file: histograms of the run when it is instrumented, JFR
+// events while a recording is on. Without either the shared DISABLED trace is used
+// and begin/end return straight away.
+class FileTrace {
+
+    static final FileTrace DISABLED = new FileTrace(null, null, null);
+
+    // Null unless the run is instrumented
+    private final PipelineMetrics metrics;
+    private final Path file;
+    // Null unless JFR records file events
+    private final RenameFileEvent fileEvent;
+
+    private Stage stage;
+    private long stageStart;
+    private RenameStageEvent stageEvent;
+
+    FileTrace(PipelineMetrics metrics, Path file, RenameFileEvent fileEvent) {
+        this.metrics = metrics;
+        this.file = file;
+        this.fileEvent = fileEvent;
+        if (fileEvent != null) {
+            fileEvent.begin();
+        }
+    }
+
+    void begin(Stage stage) {
+        if (this == DISABLED) {
+            return;
+        }
+
+        this.stage = stage;
+        if (metrics != null) {
+            stageStart = System.nanoTime();
+        }
+        if (fileEvent != null) {
+            stageEvent = new RenameStageEvent();
+            stageEvent.begin();
+        }
+    }
+
+    void end() {
+        if (stage == null) {
+            return;
+        }
+
+        if (metrics != null) {
+            metrics.record(stage, System.nanoTime() - stageStart);
+        }
+        if (stageEvent != null) {
+            stageEvent.end();
+            if (stageEvent.shouldCommit()) {
+                stageEvent.stage = stage.name();
+                stageEvent.file = file.toString();
+                stageEvent.commit();
+            }
+            stageEvent = null;
+        }
+        stage = null;
+    }
+
+    void finish(RenameResult result) {
+        // A stage left open by an exception still counts
+        end();
+
+        if (fileEvent != null) {
+            fileEvent.end();
+            if (fileEvent.shouldCommit()) {
+                fileEvent.file = file.toString();
+                fileEvent.status = result.getStatus().name();
+                fileEvent.newName = result.getNewName();
+                fileEvent.message = result.getErrorMessage();
+                fileEvent.commit();
+            }
+        }
+    }
+}
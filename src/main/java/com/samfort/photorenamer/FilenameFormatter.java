@@ -1,112 +1,96 @@
 package com.samfort.photorenamer;
 
+import com.drew.lang.Rational;
+
 import java.nio.file.Path;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Map;
-import java.util.function.Function;
 
 public class FilenameFormatter {
 
-    private static final DateTimeFormatter DATE_FORMATTER =
-            DateTimeFormatter.ofPattern(Constants.FILENAME_DATE_PATTERN);
-
-    public String formatFilename(ZonedDateTime photoTime, Map<String, String> metadata) {
-        StringBuilder name = new StringBuilder();
-
-        // Date/time prefix
-        name.append(photoTime.format(DATE_FORMATTER));
-
-        // Camera model
-        appendIfPresent(name, metadata.get("model"), this::cleanString);
+    public String formatFilename(PhotoMetadata metadata) {
+        return FilenameTemplate.DEFAULT.render(metadata);
+    }
 
-        // Focal length
-        appendIfPresent(name, metadata.get("focal"), s -> cleanString(s).replace(" ", ""));
+    // Field renderers used by FilenameTemplate. Each appends its value and returns false
+    // when there is nothing to show.
 
-        // Aperture
-        appendIfPresent(name, metadata.get("aperture"), this::formatAperture);
+    // Filesystem-unsafe and control characters become '_', then spaces are trimmed
+    static boolean appendModel(StringBuilder out, String model) {
+        if (model == null || model.isBlank()) return false;
 
-        // Shutter speed
-        appendIfPresent(name, metadata.get("shutter"), this::formatShutterSpeed);
+        int start = 0;
+        int end = model.length();
+        while (start < end && model.charAt(start) == ' ') start++;
+        while (end > start && model.charAt(end - 1) == ' ') end--;
 
-        // ISO
-        String iso = metadata.get("iso");
-        if (iso != null && !iso.isBlank()) {
-            name.append("_ISO").append(iso.trim());
+        for (int i = start; i < end; i++) {
+            char c = model.charAt(i);
+            out.append(isUnsafe(c) ? '_' : c);
         }
-
-        return name.toString();
+        return end > start;
     }
 
-    private void appendIfPresent(StringBuilder sb, String value, Function<String, String> formatter) {
-        if (value != null && !value.isBlank()) {
-            String formatted = formatter.apply(value);
-            if (!formatted.isEmpty()) {
-                sb.append("_").append(formatted);
-            }
-        }
-    }
+    // "140_mm" from the 35mm tag, "140" when estimated from the crop factor, "Unknown"
+    // when the 35mm tag is 0
+    static boolean appendFocal(StringBuilder out, int focalLength, boolean estimated) {
+        if (focalLength < 0) return false;
 
-    private String cleanString(String s) {
-        if (s == null || s.isBlank()) return Constants.EMPTY;
-        // Remove filesystem-unsafe characters and control characters
-        return s.replaceAll("[/\\\\:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (focalLength == 0 && !estimated) {
+            out.append("Unknown");
+            return true;
+        }
+        out.append(focalLength);
+        if (!estimated) {
+            out.append("_mm");
+        }
+        return true;
     }
 
-    private String formatAperture(String raw) {
-        if (raw == null || raw.isBlank()) return Constants.EMPTY;
+    // "2.8"
+    static boolean appendAperture(StringBuilder out, int apertureTenths) {
+        if (apertureTenths < 0) return false;
 
-        String cleaned = raw.replaceAll("[^0-9.,]", "").replace(',', '.');
-        return cleaned.isEmpty() ? Constants.EMPTY : "F" + cleaned;
+        out.append(apertureTenths / 10).append('.').append(apertureTenths % 10);
+        return true;
     }
 
-    private String formatShutterSpeed(String raw) {
-        if (raw == null || raw.isBlank()) return Constants.EMPTY;
-
-        try {
-            // Handle fraction format: "1/200"
-            if (raw.contains("/")) {
-                String cleaned = raw.replaceAll("[^0-9/]", "");
-                String[] parts = cleaned.split("/");
-                double num = Double.parseDouble(parts[0].trim());
-                double den = Double.parseDouble(parts[1].trim());
-
-                if (num == 1.0) {
-                    return "1-" + (int) Math.round(den);
-                } else {
-                    double sec = num / den;
-                    return formatSecondsToShutterSpeed(sec);
-                }
-            }
-
-            // Handle underscore format: "3109601_1000000000 sec"
-            if (raw.contains("_")) {
-                String cleaned = raw.replaceAll("[^0-9_]", "");
-                String[] parts = cleaned.split("_");
-                double num = Double.parseDouble(parts[0]);
-                double den = Double.parseDouble(parts[1]);
-                double sec = num / den;
-
-                return formatSecondsToShutterSpeed(sec);
-            }
-
-            // Handle decimal seconds: "0.005", "8", "30"
-            String cleaned = raw.replaceAll("[^0-9.]", "");
-            double sec = Double.parseDouble(raw.trim());
-            return formatSecondsToShutterSpeed(sec);
-
-        } catch (Exception e) {
-            return Constants.EMPTY;
+    // "1-200" for fractions of a second, "2s" from one second up. Names have always been
+    // made from the library's description ("1/200 sec", "0.01 sec", "2 sec"), of which
+    // only fractions were understood: an exposure described as a whole number or a short
+    // decimal (1/100, 1/2, 2 s) leaves the field out.
+    static boolean appendShutterSpeed(StringBuilder out, long numerator, long denominator) {
+        String description = new Rational(numerator, denominator).toSimpleString(true);
+        int slash = description.indexOf('/');
+        if (slash < 0) return false;
+
+        // Signs went with everything else that isn't a digit
+        double num = Math.abs(Double.parseDouble(description.substring(0, slash)));
+        double den = Double.parseDouble(description.substring(slash + 1));
+        if (num == 1.0) {
+            out.append("1-").append((int) Math.round(den));
+            return true;
         }
-    }
 
-    private String formatSecondsToShutterSpeed(double seconds) {
+        double seconds = num / den;
         if (seconds >= 1.0) {
-            return (int) Math.round(seconds) + "s";
+            out.append((int) Math.round(seconds)).append('s');
         } else {
-            int denominator = (int) Math.round(1.0 / seconds);
-            return "1-" + denominator;
+            out.append("1-").append((int) Math.round(1.0 / seconds));
         }
+        return true;
+    }
+
+    static boolean appendIso(StringBuilder out, int iso) {
+        if (iso < 0) return false;
+
+        out.append(iso);
+        return true;
+    }
+
+    static boolean isUnsafe(char c) {
+        return switch (c) {
+            case '/', '\\', ':', '*', '?', '"', '<', '>', '|' -> true;
+            default -> c < 0x20 || c == 0x7F;
+        };
     }
 
     public String getFileExtension(Path file) {
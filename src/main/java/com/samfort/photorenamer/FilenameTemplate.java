@@ -0,0 +1,274 @@
+package com.samfort.photorenamer;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// User-defined file name layout, compiled once into a list of render steps.
+//   {date} or {date:yyyyMMdd_HHmmss}   capture time, DateTimeFormatter pattern
+//   {model} {focal} {aperture} {shutter} {iso}
+//   [ ... ]   optional group, dropped as a whole if any field in it has no value
+//   \x        the character x taken literally
+// Example: {date:yyyyMMdd_HHmmss}[_{model}][_F{aperture}]
+//
+// The same pattern is also compiled into a regex recognizing names the template could
+// have produced, including the _1, _2... that NameRegistry adds to keep names unique.
+// It checks the shape only: digits where a number goes, the model's character set. At
+// least one optional group must be there: many phones name their originals like the
+// bare date part (20251023_104114.jpg, 20251023_104114_1.jpg), which says nothing.
+public final class FilenameTemplate {
+
+    public static final String DEFAULT_PATTERN =
+            "{date:" + Constants.FILENAME_DATE_PATTERN + "}[_{model}][_{focal}][_F{aperture}][_{shutter}][_ISO{iso}]";
+    public static final FilenameTemplate DEFAULT = compile(DEFAULT_PATTERN);
+
+    // Names are short, one builder per thread is reused for every file
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    // Added by NameRegistry when the name is taken
+    private static final String UNIQUE_SUFFIX_REGEX = "(?:_\\d+)?";
+    private static final String NUMBER_REGEX = "\\d+";
+    private static final String MODEL_REGEX = "[^/\\\\:*?\"<>|\\x00-\\x1F\\x7F]+";
+
+    private final String pattern;
+    private final Step[] steps;
+    private final Pattern namePattern;
+    // The mandatory parts alone; null when the template has no optional group
+    private final Pattern bareNamePattern;
+
+    // Appends one part of the name; false when a field has no value, so the enclosing group is dropped
+    private interface Step {
+        boolean render(StringBuilder out, PhotoMetadata metadata);
+    }
+
+    private FilenameTemplate(String pattern, Step[] steps, Pattern namePattern, Pattern bareNamePattern) {
+        this.pattern = pattern;
+        this.steps = steps;
+        this.namePattern = namePattern;
+        this.bareNamePattern = bareNamePattern;
+    }
+
+    public static FilenameTemplate compile(String pattern) {
+        Parser parser = new Parser(pattern);
+        Step[] steps = parser.parse(false);
+        return new FilenameTemplate(pattern, steps,
+                Pattern.compile(parser.regex + UNIQUE_SUFFIX_REGEX),
+                parser.hasGroups ? Pattern.compile(parser.bareRegex + UNIQUE_SUFFIX_REGEX) : null);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    // The metadata must have a capture time
+    public String render(PhotoMetadata metadata) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        renderAll(steps, out, metadata);
+        return out.toString();
+    }
+
+    // Whether the file name, extension aside, looks like one this template renders
+    public boolean matches(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot >= 0 ? fileName.substring(0, dot) : fileName;
+        return namePattern.matcher(baseName).matches()
+                && (bareNamePattern == null || !bareNamePattern.matcher(baseName).matches());
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static boolean renderAll(Step[] steps, StringBuilder out, PhotoMetadata metadata) {
+        for (Step step : steps) {
+            if (!step.render(out, metadata)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Parser {
+        private static final ZonedDateTime SAMPLE_TIME = ZonedDateTime.of(2000, 1, 2, 3, 4, 5, 0, ZoneOffset.UTC);
+
+        private final String pattern;
+        // Built alongside the steps; the bare one leaves the optional groups out
+        private final StringBuilder regex = new StringBuilder();
+        private final StringBuilder bareRegex = new StringBuilder();
+        private boolean hasGroups;
+        private int pos;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        // Up to the end of the pattern, or up to the closing ']' of a group
+        Step[] parse(boolean inGroup) {
+            List<Step> steps = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                if (c == ']' && inGroup) {
+                    break;
+                }
+
+                switch (c) {
+                    case '\\' -> {
+                        if (pos + 1 >= pattern.length()) {
+                            throw error("Dangling '\\'");
+                        }
+                        literal.append(literalChar(pattern.charAt(pos + 1)));
+                        pos += 2;
+                    }
+                    case '{' -> {
+                        addLiteral(steps, literal);
+                        steps.add(field());
+                    }
+                    case '[' -> {
+                        addLiteral(steps, literal);
+                        pos++;
+                        hasGroups = true;
+                        int bareMark = bareRegex.length();
+                        regex.append("(?:");
+                        Step[] group = parse(true);
+                        if (pos >= pattern.length()) {
+                            throw error("Unclosed '['");
+                        }
+                        regex.append(")?");
+                        bareRegex.setLength(bareMark);
+                        pos++;
+                        steps.add((out, metadata) -> {
+                            int mark = out.length();
+                            if (!renderAll(group, out, metadata)) {
+                                out.setLength(mark);
+                            }
+                            return true;
+                        });
+                    }
+                    case '}', ']' -> throw error("Unexpected '" + c + "'");
+                    default -> {
+                        literal.append(literalChar(c));
+                        pos++;
+                    }
+                }
+            }
+
+            addLiteral(steps, literal);
+            return steps.toArray(new Step[0]);
+        }
+
+        private Step field() {
+            int end = pattern.indexOf('}', pos);
+            if (end < 0) {
+                throw error("Unclosed '{'");
+            }
+            String body = pattern.substring(pos + 1, end);
+            int colon = body.indexOf(':');
+            String name = colon < 0 ? body : body.substring(0, colon);
+            String argument = colon < 0 ? null : body.substring(colon + 1);
+
+            Step step = switch (name) {
+                case "date" -> {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(
+                            argument != null ? argument : Constants.FILENAME_DATE_PATTERN);
+                    String sample = formatter.format(SAMPLE_TIME);
+                    // Patterns like "dd/MM" or "HH:mm" would produce invalid names
+                    sample.chars().forEach(ch -> literalChar((char) ch));
+                    appendRegex(dateRegex(sample));
+                    yield (out, metadata) -> {
+                        formatter.formatTo(metadata.getCaptureDateTime(), out);
+                        return true;
+                    };
+                }
+                case "model" -> {
+                    appendRegex(MODEL_REGEX);
+                    yield (out, metadata) -> FilenameFormatter.appendModel(out, metadata.getModel());
+                }
+                case "focal" -> {
+                    appendRegex("(?:" + NUMBER_REGEX + "(?:_mm)?|Unknown)");
+                    yield (out, metadata) ->
+                            FilenameFormatter.appendFocal(out, metadata.getFocalLength(), metadata.isFocalEstimated());
+                }
+                case "aperture" -> {
+                    appendRegex(NUMBER_REGEX + "\\.\\d");
+                    yield (out, metadata) -> FilenameFormatter.appendAperture(out, metadata.getApertureTenths());
+                }
+                case "shutter" -> {
+                    appendRegex("(?:1-" + NUMBER_REGEX + "|-?" + NUMBER_REGEX + "s)");
+                    yield (out, metadata) -> FilenameFormatter.appendShutterSpeed(out,
+                            metadata.getExposureNumerator(), metadata.getExposureDenominator());
+                }
+                case "iso" -> {
+                    appendRegex(NUMBER_REGEX);
+                    yield (out, metadata) -> FilenameFormatter.appendIso(out, metadata.getIso());
+                }
+                default -> throw error("Unknown field '" + name + "'");
+            };
+            if (argument != null && !name.equals("date")) {
+                throw error("Field '" + name + "' takes no argument");
+            }
+
+            pos = end + 1;
+            return step;
+        }
+
+        private char literalChar(char c) {
+            if (FilenameFormatter.isUnsafe(c)) {
+                throw error("Character '" + c + "' is not allowed in file names");
+            }
+            return c;
+        }
+
+        // From a formatted sample: runs of digits may be longer (years, unpadded days),
+        // runs of letters are month and day names in any length
+        private static String dateRegex(String sample) {
+            StringBuilder out = new StringBuilder();
+            int i = 0;
+            while (i < sample.length()) {
+                char c = sample.charAt(i);
+                int end = i + 1;
+                if (Character.isDigit(c) || Character.isLetter(c)) {
+                    boolean digit = Character.isDigit(c);
+                    while (end < sample.length() && (digit
+                            ? Character.isDigit(sample.charAt(end))
+                            : Character.isLetter(sample.charAt(end)))) {
+                        end++;
+                    }
+                    out.append(digit ? NUMBER_REGEX : "\\p{L}+");
+                } else {
+                    out.append(Pattern.quote(String.valueOf(c)));
+                }
+                i = end;
+            }
+            return out.toString();
+        }
+
+        private void addLiteral(List<Step> steps, StringBuilder literal) {
+            if (literal.length() == 0) {
+                return;
+            }
+            String text = literal.toString();
+            literal.setLength(0);
+            appendRegex(Pattern.quote(text));
+            steps.add((out, metadata) -> {
+                out.append(text);
+                return true;
+            });
+        }
+
+        private void appendRegex(String part) {
+            regex.append(part);
+            bareRegex.append(part);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + " in " + pattern);
+        }
+    }
+}
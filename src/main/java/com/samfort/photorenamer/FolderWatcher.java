@@ -0,0 +1,240 @@
+package com.samfort.photorenamer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Hot-folder mode: renames photos as they are dropped into the folder, instead of
+// rescanning it. Only files created or modified after the start are looked at. A file
+// is taken once its size and mtime haven't changed for settleMillis, so a copy still in
+// progress is left alone; ready files go to the service in batches of up to BATCH_SIZE.
+// With nothing pending the thread blocks in WatchService.take() and uses no CPU.
+//
+// Each batch is reported like a small run: onStart, onProgress per file, onComplete.
+// Names the watcher produced itself are ignored when their events come back.
+public class FolderWatcher implements Closeable {
+
+    public static final long DEFAULT_SETTLE_MILLIS = 2000;
+    static final int BATCH_SIZE = 32;
+    // Longest wait between checks while files are settling
+    private static final long MAX_POLL_MILLIS = 500;
+    // Our own renames are remembered this long, their events arrive well within it
+    private static final long OWN_RENAME_MEMORY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final FileRenameService service;
+    private final RenameConfig config;
+    private final ProgressListener listener;
+    private final long settleNanos;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    // Insertion order, so files are renamed roughly in the order they arrived
+    private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+    private final Map<Path, Long> ownRenames = new HashMap<>();
+
+    private static final class Candidate {
+        long size = -1;
+        long modifiedMillis;
+        long stableSince;
+    }
+
+    public FolderWatcher(FileRenameService service, RenameConfig config, ProgressListener listener,
+                         long settleMillis) throws IOException {
+        this.service = service;
+        this.config = config;
+        this.listener = listener;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.watchService = config.getTargetFolder().getFileSystem().newWatchService();
+        register(config.getTargetFolder(), false);
+    }
+
+    // Blocks until close() is called from another thread
+    public void run() throws IOException {
+        try {
+            while (true) {
+                WatchKey key = candidates.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(pollMillis(), TimeUnit.MILLISECONDS);
+                long now = System.nanoTime();
+                while (key != null) {
+                    handle(key, now);
+                    key = watchService.poll();
+                }
+                renameSettled(now);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed, we're done
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    // Pending files, for tests and status output
+    int getPendingCount() {
+        return candidates.size();
+    }
+
+    private void handle(WatchKey key, long now) throws IOException {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, look at everything in the directory
+                addFiles(directory, now);
+                continue;
+            }
+
+            Path file = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                candidates.remove(file);
+            } else if (config.isRecursive() && event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(file)) {
+                // A copied folder may already have files in it when we get to register it
+                register(file, true);
+            } else if (DirectoryWalker.isSupportedImageFile(file) && !isOwnRename(file, now)) {
+                candidates.computeIfAbsent(file, f -> new Candidate()).stableSince = now;
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private boolean isOwnRename(Path file, long now) {
+        Long renamedAt = ownRenames.get(file);
+        return renamedAt != null && now - renamedAt < OWN_RENAME_MEMORY_NANOS;
+    }
+
+    // A file is ready when a check finds the same size and mtime as the one before and
+    // nothing has changed for settleNanos
+    private void renameSettled(long now) {
+        List<Path> ready = new ArrayList<>();
+        Iterator<Map.Entry<Path, Candidate>> entries = candidates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Candidate> entry = entries.next();
+            Candidate candidate = entry.getValue();
+            if (now - candidate.stableSince < settleNanos && candidate.size >= 0) {
+                continue;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Gone, or unreadable for now (a dangling link, no permission): a later
+                // event for the file brings it back
+                entries.remove();
+                continue;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() != candidate.size || modified != candidate.modifiedMillis) {
+                candidate.size = attributes.size();
+                candidate.modifiedMillis = modified;
+                candidate.stableSince = now;
+            } else if (attributes.isRegularFile()) {
+                ready.add(entry.getKey());
+                entries.remove();
+            } else {
+                entries.remove();
+            }
+        }
+
+        for (int from = 0; from < ready.size(); from += BATCH_SIZE) {
+            renameBatch(ready.subList(from, Math.min(from + BATCH_SIZE, ready.size())), now);
+        }
+        ownRenames.values().removeIf(renamedAt -> now - renamedAt >= OWN_RENAME_MEMORY_NANOS);
+    }
+
+    private void renameBatch(List<Path> files, long now) {
+        listener.onStart(files.size());
+        int renamed = 0;
+        int skipped = 0;
+        int errors = 0;
+        List<RenameResult> results = service.renameBatch(files, config);
+        for (int i = 0; i < results.size(); i++) {
+            RenameResult result = results.get(i);
+            switch (result.getStatus()) {
+                case SUCCESS -> {
+                    renamed++;
+                    ownRenames.put(files.get(i).resolveSibling(result.getNewName()), now);
+                }
+                case SKIPPED -> skipped++;
+                case ERROR -> errors++;
+            }
+            listener.onProgress(result);
+        }
+        listener.onComplete(renamed, skipped, errors);
+    }
+
+    // Until the first candidate may be settled, but often enough to notice a copy that stalled
+    private long pollMillis() {
+        long now = System.nanoTime();
+        long wait = MAX_POLL_MILLIS;
+        for (Candidate candidate : candidates.values()) {
+            long left = TimeUnit.NANOSECONDS.toMillis(candidate.stableSince + settleNanos - now);
+            wait = Math.min(wait, Math.max(1, left));
+        }
+        return wait;
+    }
+
+    private void register(Path root, boolean addExisting) throws IOException {
+        long now = System.nanoTime();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+                if (addExisting) {
+                    addFiles(directory, now);
+                }
+                return config.isRecursive() || directory.equals(root)
+                        ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void addFiles(Path directory, long now) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, DirectoryWalker::isSupportedImageFile)) {
+            for (Path file : entries) {
+                if (!isOwnRename(file, now)) {
+                    candidates.computeIfAbsent(file, f -> new Candidate()).stableSince = now;
+                }
+            }
+        } catch (IOException e) {
+            // Gone again, or unreadable; its events still come in
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.samfort.photorenamer;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.FileTypeDetector;
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.tiff.TiffMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.file.FileTypeDirectory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads metadata through positional FileChannel reads so that only the header
+// regions (JPEG APP segments, TIFF IFD chains, HEIF meta box) come off the disk
+class HeaderReader {
+
+    private final ReadStatistics statistics;
+
+    HeaderReader(ReadStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    Metadata read(Path file) throws ImageProcessingException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ChannelInputStream stream = new ChannelInputStream(channel, length);
+            ChannelRandomAccessReader tiffReader = null;
+
+            try {
+                FileType fileType = FileTypeDetector.detectFileType(stream);
+                Metadata metadata;
+
+                switch (fileType) {
+                    case Tiff, Arw, Cr2, Nef, Orf, Rw2 -> {
+                        tiffReader = new ChannelRandomAccessReader(channel, length);
+                        metadata = TiffMetadataReader.readMetadata(tiffReader);
+                    }
+                    // JPEG stops at the start of scan, HEIF skips mdat without reading it
+                    default -> metadata = ImageMetadataReader.readMetadata(stream, length, fileType);
+                }
+
+                metadata.addDirectory(new FileTypeDirectory(fileType));
+                return metadata;
+            } finally {
+                long bytes = stream.getBytesRead();
+                if (tiffReader != null) bytes += tiffReader.getBytesRead();
+                statistics.record(bytes);
+            }
+        }
+    }
+}
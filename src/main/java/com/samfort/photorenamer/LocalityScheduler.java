@@ -0,0 +1,103 @@
+package com.samfort.photorenamer;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// LOCALITY mode: files are queued per directory and workers claim them in runs of up to
+// BATCH_SIZE consecutive files of the directory at the head of the line. Only when a
+// directory is used up do they move on to the next one, in the order directories were
+// first seen. Together with the walker's inode order within a directory, reads on a
+// spinning disk or HSM volume sweep mostly in one direction instead of seeking between
+// folders, and each directory's metadata is read while it is still cached.
+class LocalityScheduler implements FileExecutor {
+
+    static final int BATCH_SIZE = 32;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    // Guarded by lock
+    private final Map<Path, ArrayDeque<Runnable>> pendingByDirectory = new HashMap<>();
+    private final ArrayDeque<Path> directories = new ArrayDeque<>();
+    private boolean shutdown;
+
+    LocalityScheduler(int threads) {
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "photo-renamer-locality-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void execute(Path file, Runnable task) {
+        Path directory = file.getParent();
+        lock.lock();
+        try {
+            ArrayDeque<Runnable> pending = pendingByDirectory.get(directory);
+            if (pending == null) {
+                pending = new ArrayDeque<>();
+                pendingByDirectory.put(directory, pending);
+                directories.addLast(directory);
+            }
+            pending.addLast(task);
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Workers finish what is queued, then exit
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        List<Runnable> batch;
+        while ((batch = claim()) != null) {
+            for (Runnable task : batch) {
+                task.run();
+            }
+        }
+    }
+
+    // Next run of files from the first directory, null once shut down and drained
+    private List<Runnable> claim() {
+        lock.lock();
+        try {
+            while (directories.isEmpty()) {
+                if (shutdown) {
+                    return null;
+                }
+                workAvailable.awaitUninterruptibly();
+            }
+
+            Path directory = directories.peekFirst();
+            ArrayDeque<Runnable> pending = pendingByDirectory.get(directory);
+            List<Runnable> batch = new ArrayList<>(Math.min(BATCH_SIZE, pending.size()));
+            while (batch.size() < BATCH_SIZE && !pending.isEmpty()) {
+                batch.add(pending.pollFirst());
+            }
+            // Files queued for it later start a new turn at the back of the line
+            if (pending.isEmpty()) {
+                directories.pollFirst();
+                pendingByDirectory.remove(directory);
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.samfort.photorenamer;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Log lines for a JList, keeping only the newest `capacity` lines. Worker threads call
+// add() for every file; the lines are handed to Swing in batches by flush(), which the
+// GUI calls from a timer, so a large run costs a few list events per tick instead of
+// one EDT task per file.
+class LogListModel extends AbstractListModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final String[] lines;
+    private int start;
+    private int size;
+
+    // Filled by worker threads, drained on the EDT
+    private final Object pendingLock = new Object();
+    private List<String> pending = new ArrayList<>();
+
+    LogListModel(int capacity) {
+        this.capacity = capacity;
+        this.lines = new String[capacity];
+    }
+
+    // Any thread
+    void add(String line) {
+        synchronized (pendingLock) {
+            pending.add(line);
+            // Lines that would be evicted in the same flush are dropped here already
+            if (pending.size() >= 2 * capacity) {
+                pending = new ArrayList<>(pending.subList(capacity, pending.size()));
+            }
+        }
+    }
+
+    // EDT. Moves pending lines into the list and returns them
+    List<String> flush() {
+        List<String> batch;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return List.of();
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        if (batch.size() > capacity) {
+            batch = batch.subList(batch.size() - capacity, batch.size());
+        }
+
+        int evicted = Math.max(0, size + batch.size() - capacity);
+        if (evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                lines[(start + i) % capacity] = null;
+            }
+            start = (start + evicted) % capacity;
+            size -= evicted;
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+
+        int first = size;
+        for (String line : batch) {
+            lines[(start + size) % capacity] = line;
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+        return batch;
+    }
+
+    // EDT. Also drops lines not flushed yet
+    void clear() {
+        synchronized (pendingLock) {
+            pending = new ArrayList<>();
+        }
+        if (size == 0) {
+            return;
+        }
+
+        int removed = size;
+        Arrays.fill(lines, null);
+        start = 0;
+        size = 0;
+        fireIntervalRemoved(this, 0, removed - 1);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines[(start + index) % capacity];
+    }
+}
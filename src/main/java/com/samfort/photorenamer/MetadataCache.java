@@ -0,0 +1,282 @@
+package com.samfort.photorenamer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Extracted metadata kept between runs, keyed by absolute path and valid only while
+// the file's size and modification time are unchanged. Focal lengths estimated from
+// the crop factor are estimated again on every hit, from the recorded focal length.
+//
+// The file is an append-only log of binary records (later records win); new entries are
+// written in one go by flush(). It is rewritten from the in-memory LRU once it grows past
+// maxFileBytes, and after an eviction, so evicted entries don't come back on the next load.
+//
+// Workers look entries up without a shared lock. LRU is approximate: a hit only stamps
+// the entry with the current clock, and once there are more than maxEntries the least
+// recently stamped ones are evicted in a batch, down to EVICT_TO of the limit.
+public class MetadataCache {
+
+    public static final Path DEFAULT_FILE = Path.of(System.getProperty("user.home"), ".photorenamer", "metadata.cache");
+    public static final int DEFAULT_MAX_ENTRIES = 200_000;
+    public static final long DEFAULT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x50524d43; // "PRMC"
+    private static final int VERSION = 4;
+    private static final double EVICT_TO = 0.9;
+
+    private final Path file;
+    private final int maxEntries;
+    private final long maxFileBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Appended by workers, only flush() takes them off
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    // Advances on every put, so hits don't all write the same counter
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+    // Set by eviction without holding this, cleared by flush()
+    private volatile boolean needsRewrite;
+
+    private static final class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final PhotoMetadata metadata;
+        // Written on hits without synchronization; a stale stamp only makes eviction less exact
+        long lastUsed;
+
+        Entry(String path, long size, long modified, PhotoMetadata metadata, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.metadata = metadata;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private record Stamped(Entry entry, long lastUsed) {
+    }
+
+    private MetadataCache(Path file, int maxEntries, long maxFileBytes) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public static MetadataCache open(Path file) {
+        return open(file, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_FILE_BYTES);
+    }
+
+    public static MetadataCache open(Path file, int maxEntries, long maxFileBytes) {
+        MetadataCache cache = new MetadataCache(file, maxEntries, maxFileBytes);
+        cache.load();
+        return cache;
+    }
+
+    PhotoMetadata get(Path path, BasicFileAttributes attributes) {
+        Entry entry = entries.get(key(path));
+        if (entry == null
+                || entry.size != attributes.size()
+                || entry.modified != attributes.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        entry.lastUsed = clock.get();
+        return entry.metadata;
+    }
+
+    void put(Path path, BasicFileAttributes attributes, PhotoMetadata metadata) {
+        add(new Entry(key(path), attributes.size(), attributes.lastModifiedTime().toMillis(), metadata,
+                clock.incrementAndGet()));
+    }
+
+    // A rename keeps size and mtime, so the entry stays valid under the new name
+    void moved(Path source, Path target) {
+        Entry entry = entries.remove(key(source));
+        if (entry != null) {
+            add(new Entry(key(target), entry.size, entry.modified, entry.metadata, clock.incrementAndGet()));
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.path, entry);
+        pending.add(entry);
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    // One worker sorts the stamps and drops the oldest, the others carry on
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() <= maxEntries) {
+                return;
+            }
+            // Stamps keep changing under concurrent hits, sort a snapshot of them
+            List<Stamped> byAge = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                byAge.add(new Stamped(entry, entry.lastUsed));
+            }
+            byAge.sort(Comparator.comparingLong(Stamped::lastUsed));
+            int excess = byAge.size() - (int) (maxEntries * EVICT_TO);
+            for (int i = 0; i < excess; i++) {
+                Entry entry = byAge.get(i).entry();
+                entries.remove(entry.path, entry);
+            }
+            needsRewrite = true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Appends the entries added since the last flush, or compacts the file when it is too big
+    // or still holds evicted entries
+    public synchronized void flush() {
+        if (pending.isEmpty() && !needsRewrite) {
+            return;
+        }
+
+        // Only these are taken off the queue, entries added meanwhile wait for the next flush
+        List<Entry> written = new ArrayList<>(pending);
+        // Cleared before the rewrite, so an eviction during it asks for another one
+        boolean rewriteRequested = needsRewrite;
+        needsRewrite = false;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            if (!rewriteRequested && Files.exists(file) && Files.size(file) < maxFileBytes) {
+                append(written);
+            } else {
+                rewrite();
+            }
+            for (int i = 0; i < written.size(); i++) {
+                pending.poll();
+            }
+        } catch (IOException e) {
+            // The cache is only an optimization, keep the entries in memory and retry next time
+            if (rewriteRequested) {
+                needsRewrite = true;
+            }
+        }
+    }
+
+    private void append(List<Entry> newEntries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND)))) {
+            for (Entry entry : newEntries) {
+                writeEntry(out, entry);
+            }
+        }
+    }
+
+    private void rewrite() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Entry entry : entries.values()) {
+                writeEntry(out, entry);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                needsRewrite = true;
+                return;
+            }
+            while (!atEnd(in)) {
+                Entry entry = readEntry(in, clock.incrementAndGet());
+                entries.put(entry.path, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Foreign file or a record cut short by a crash: keep what was read so far
+            // and replace the file on the next flush instead of appending after garbage
+            needsRewrite = true;
+        }
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    private static boolean atEnd(DataInputStream in) throws IOException {
+        in.mark(1);
+        if (in.read() < 0) {
+            return true;
+        }
+        in.reset();
+        return false;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        PhotoMetadata metadata = entry.metadata;
+        out.writeUTF(entry.path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+
+        out.writeLong(metadata.getCaptureTime());
+        writeString(out, metadata.getModel());
+        out.writeInt(metadata.getFocalLength());
+        out.writeBoolean(metadata.isFocalEstimated());
+        out.writeDouble(metadata.getRealFocalLength());
+        out.writeInt(metadata.getApertureTenths());
+        out.writeLong(metadata.getExposureNumerator());
+        out.writeLong(metadata.getExposureDenominator());
+        out.writeInt(metadata.getIso());
+    }
+
+    private static Entry readEntry(DataInputStream in, long lastUsed) throws IOException {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+
+        PhotoMetadata metadata = PhotoMetadata.builder()
+                .captureTime(in.readLong())
+                .model(readString(in))
+                .focalLength(in.readInt())
+                .focalEstimated(in.readBoolean())
+                .realFocalLength(in.readDouble())
+                .apertureTenths(in.readInt())
+                .exposureNumerator(in.readLong())
+                .exposureDenominator(in.readLong())
+                .iso(in.readInt())
+                .build();
+        return new Entry(path, size, modified, metadata, lastUsed);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.samfort.photorenamer;
+
+import lombok.Value;
+
+import java.util.List;
+
+// Timing of an instrumented run, see RenameConfig.instrumented
+@Value
+public class MetricsSnapshot {
+
+    long files;
+    double filesPerSecond;
+    long bytesRead;
+    double walkMillis;
+    List<StageSummary> stages;
+
+    @Value
+    public static class StageSummary {
+        Stage stage;
+        long count;
+        double totalMillis;
+        double p50Micros;
+        double p99Micros;
+    }
+}
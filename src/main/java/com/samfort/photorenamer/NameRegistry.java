@@ -0,0 +1,90 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Names taken in each directory during one run. A directory is listed once on first use,
+// after that unique names are picked by atomic set inserts without touching the disk, so
+// two workers can never be handed the same target. Names are compared case-insensitively
+// to stay safe on Windows and macOS volumes.
+class NameRegistry {
+
+    private final Map<Path, Set<String>> namesByDirectory = new ConcurrentHashMap<>();
+    // Counter below which every name of the series was taken, so a burst of frames from
+    // the same second doesn't rescan the whole series for each file
+    private final Map<Series, Integer> nextCounters = new ConcurrentHashMap<>();
+
+    private record Series(Path directory, String name) {
+    }
+
+    // First free name of baseName + extension, baseName_1 + extension, ... in the source's
+    // directory. A source that already has one of these names keeps it.
+    Path reserve(Path source, String baseName, String extension) throws IOException {
+        Path directory = source.getParent();
+        Set<String> names = names(directory);
+        String sourceName = key(source.getFileName().toString());
+        Series series = new Series(directory, key(baseName + extension));
+
+        // A source that may already belong to the series is checked from the start
+        int counter = sourceName.startsWith(key(baseName)) ? 0 : nextCounters.getOrDefault(series, 0);
+        while (true) {
+            String candidate = counter == 0 ? baseName + extension : baseName + "_" + counter + extension;
+            String candidateKey = key(candidate);
+            if (candidateKey.equals(sourceName) || names.add(candidateKey)) {
+                nextCounters.merge(series, counter + 1, Math::max);
+                return source.resolveSibling(candidate);
+            }
+            counter++;
+        }
+    }
+
+    // Claims exactly this name, false if it is already taken
+    boolean tryReserve(Path target) throws IOException {
+        return names(target.getParent()).add(key(target.getFileName().toString()));
+    }
+
+    // The source name is free again, unless the move only changed its case
+    void moved(Path source, Path target) {
+        if (!key(source.getFileName().toString()).equals(key(target.getFileName().toString()))) {
+            release(source);
+        }
+    }
+
+    private void release(Path file) {
+        Set<String> names = namesByDirectory.get(file.getParent());
+        if (names != null) {
+            names.remove(key(file.getFileName().toString()));
+        }
+    }
+
+    private Set<String> names(Path directory) throws IOException {
+        try {
+            return namesByDirectory.computeIfAbsent(directory, NameRegistry::list);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Set<String> list(Path directory) {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                names.add(key(entry.getFileName().toString()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return names;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,192 @@
+package com.samfort.photorenamer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Writes one JSON object per line for every event of a run, for scripts and log
+// collectors. Lines are buffered and flushed a few times a second rather than per
+// file; results may come from several worker threads at once. Paths are relative to the
+// folder of the run, or absolute when there is none (undo, resume).
+//
+// {"event":"start","total":120}                      total is null while streaming
+// {"event":"file","status":"SUCCESS","source":"day1/IMG_1.jpg","target":"day1/20251023_104114.jpg"}
+// {"event":"file","status":"SKIPPED","source":"a.jpg","message":"..."}
+// {"event":"total","discovered":120}                 streaming, once the walk is done
+// {"event":"statistics","filesRead":120,"bytesPerFile":65536,"cacheHits":0,"cacheMisses":120}
+// {"event":"metrics","filesPerSecond":850.2,"bytesRead":7864320,"walkMillis":3.1,
+//  "stages":{"METADATA":{"count":120,"totalMillis":98.4,"p50Micros":610.0,"p99Micros":2400.0},...}}
+//                                                    instrumented runs only, on one line
+// {"event":"complete","renamed":118,"skipped":2,"errors":0}
+public class NdjsonProgressListener implements ProgressListener {
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final Writer out;
+    // Null to print absolute paths
+    private final Path folder;
+    private final StringBuilder line = new StringBuilder(256);
+    private long lastFlush = System.nanoTime();
+    private int errors;
+    // Set when the writer fails (e.g. the reading end of a pipe closed); the run goes on
+    private IOException failure;
+
+    // The writer should be buffered; it is flushed but not closed
+    public NdjsonProgressListener(Writer out, Path folder) {
+        this.out = out;
+        this.folder = folder == null ? null : folder.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public synchronized void onStart(int totalFiles) {
+        begin("start");
+        line.append(",\"total\":").append(totalFiles == UNKNOWN_TOTAL ? "null" : String.valueOf(totalFiles));
+        end(false);
+    }
+
+    @Override
+    public synchronized void onProgress(RenameResult result) {
+        begin("file");
+        line.append(",\"status\":\"").append(result.getStatus().name()).append('"');
+        Path source = result.getSource();
+        if (source == null) {
+            appendField("source", result.getOriginalName());
+            appendField("target", result.getNewName());
+        } else {
+            appendField("source", display(source));
+            if (result.getNewName() != null) {
+                appendField("target", display(source.resolveSibling(result.getNewName())));
+            }
+        }
+        appendField("message", result.getErrorMessage());
+        end(false);
+    }
+
+    @Override
+    public synchronized void onTotalUpdated(int discoveredFiles, boolean walkComplete) {
+        if (!walkComplete) {
+            return;
+        }
+
+        begin("total");
+        line.append(",\"discovered\":").append(discoveredFiles);
+        end(false);
+    }
+
+    @Override
+    public synchronized void onReadStatistics(ReadStatistics statistics) {
+        begin("statistics");
+        line.append(",\"filesRead\":").append(statistics.getFilesRead());
+        line.append(",\"bytesPerFile\":").append(statistics.getAverageBytesPerFile());
+        line.append(",\"cacheHits\":").append(statistics.getCacheHits());
+        line.append(",\"cacheMisses\":").append(statistics.getCacheMisses());
+        end(false);
+    }
+
+    @Override
+    public synchronized void onMetrics(MetricsSnapshot metrics) {
+        begin("metrics");
+        line.append(",\"filesPerSecond\":").append(round(metrics.getFilesPerSecond()));
+        line.append(",\"bytesRead\":").append(metrics.getBytesRead());
+        line.append(",\"walkMillis\":").append(round(metrics.getWalkMillis()));
+        line.append(",\"stages\":{");
+        String separator = "";
+        for (MetricsSnapshot.StageSummary stage : metrics.getStages()) {
+            line.append(separator).append('"').append(stage.getStage().name()).append("\":{");
+            line.append("\"count\":").append(stage.getCount());
+            line.append(",\"totalMillis\":").append(round(stage.getTotalMillis()));
+            line.append(",\"p50Micros\":").append(round(stage.getP50Micros()));
+            line.append(",\"p99Micros\":").append(round(stage.getP99Micros()));
+            line.append('}');
+            separator = ",";
+        }
+        line.append('}');
+        end(false);
+    }
+
+    @Override
+    public synchronized void onComplete(int renamed, int skipped, int errors) {
+        this.errors = errors;
+        begin("complete");
+        line.append(",\"renamed\":").append(renamed);
+        line.append(",\"skipped\":").append(skipped);
+        line.append(",\"errors\":").append(errors);
+        end(true);
+    }
+
+    // Errors reported by onComplete
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    // Null if every line was written
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    private void begin(String event) {
+        line.setLength(0);
+        line.append("{\"event\":\"").append(event).append('"');
+    }
+
+    private void end(boolean flush) {
+        if (failure != null) {
+            return;
+        }
+
+        line.append("}\n");
+        try {
+            out.append(line);
+            long now = System.nanoTime();
+            if (flush || now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                out.flush();
+                lastFlush = now;
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":");
+        appendString(line, value);
+    }
+
+    private String display(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        return folder != null && absolute.startsWith(folder)
+                ? folder.relativize(absolute).toString()
+                : absolute.toString();
+    }
+
+    // One decimal is plenty for timings and keeps the lines short
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,88 @@
+package com.samfort.photorenamer;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Everything the renamer needs from one file, taken from a single metadata read.
+// Values are kept as numbers, so nothing is formatted to text and parsed back; NO_VALUE
+// means the tag is missing. A recorded 0 is kept, file names show it. The model string
+// is shared between files of the same camera.
+@Value
+@Builder(toBuilder = true)
+public class PhotoMetadata {
+
+    public static final long NO_CAPTURE_TIME = Long.MIN_VALUE;
+    public static final int NO_VALUE = -1;
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    // A shoot has a handful of models; the cap guards against garbage in the tag
+    private static final int MAX_INTERNED_MODELS = 256;
+    private static final Map<String, String> MODELS = new ConcurrentHashMap<>();
+
+    public static final PhotoMetadata EMPTY = PhotoMetadata.builder().build();
+
+    // EXIF wall-clock time as epoch seconds in UTC
+    @Builder.Default
+    long captureTime = NO_CAPTURE_TIME;
+    String model;
+    // 35mm-equivalent focal length in mm; 0 from the 35mm tag is the library's "Unknown"
+    @Builder.Default
+    int focalLength = NO_VALUE;
+    // Computed from the crop factor instead of read from the 35mm tag
+    boolean focalEstimated;
+    // Focal length as recorded, when there is no 35mm tag to take instead; kept so the
+    // estimate can be redone against the current crop factor table (cache hits). NaN if
+    // there is none.
+    @Builder.Default
+    double realFocalLength = Double.NaN;
+    // F-number times ten, rounded half up: f/2.8 -> 28
+    @Builder.Default
+    int apertureTenths = NO_VALUE;
+    // Exposure time in seconds as numerator / denominator
+    long exposureNumerator;
+    long exposureDenominator;
+    @Builder.Default
+    int iso = NO_VALUE;
+
+    public boolean hasCaptureTime() {
+        return captureTime != NO_CAPTURE_TIME;
+    }
+
+    public ZonedDateTime getCaptureDateTime() {
+        return LocalDateTime.ofEpochSecond(captureTime, 0, ZoneOffset.UTC).atZone(UTC);
+    }
+
+    public boolean hasExposure() {
+        return exposureNumerator > 0 && exposureDenominator > 0;
+    }
+
+    private static String intern(String model) {
+        if (model == null) return null;
+
+        String shared = MODELS.get(model);
+        if (shared != null) return shared;
+
+        if (MODELS.size() >= MAX_INTERNED_MODELS) return model;
+        shared = MODELS.putIfAbsent(model, model);
+        return shared != null ? shared : model;
+    }
+
+    public static class PhotoMetadataBuilder {
+
+        public PhotoMetadataBuilder model(String model) {
+            this.model = intern(model);
+            return this;
+        }
+
+        public PhotoMetadataBuilder captureDateTime(ZonedDateTime time) {
+            return captureTime(time == null ? NO_CAPTURE_TIME : time.toLocalDateTime().toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.drew.metadata.exif.ExifSubIFDDirectory;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
@@ -28,8 +29,32 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
 public class PhotoRenamer {
 
     public static void main(String[] args) {
+        // With arguments: headless batch run, see CommandLine
+        if (args.length > 0) {
+            System.exit(CommandLine.run(args));
+        }
+
         configureMacOS();
-        SwingUtilities.invokeLater(() -> new PhotoRenamerGUI().show());
+        SwingUtilities.invokeLater(() -> {
+            new PhotoRenamerGUI().show();
+            loadCropFactors();
+        });
+    }
+
+    // User entries from ~/.photorenamer/crop-factors.txt, checked before the built-in table
+    private static void loadCropFactors() {
+        if (!Files.isRegularFile(CropFactorDatabase.USER_FILE)) {
+            return;
+        }
+
+        try {
+            CropFactorDatabase.loadUserTable(CropFactorDatabase.USER_FILE);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null,
+                    "Не удалось загрузить таблицу кроп-факторов:\n" + e.getMessage(),
+                    "Ошибка",
+                    JOptionPane.WARNING_MESSAGE);
+        }
     }
 
     private static void configureMacOS() {
@@ -5,22 +5,44 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 public class PhotoRenamerGUI {
 
     private JFrame frame;
     private JTextField pathField;
     private JCheckBox recursiveCheckbox;
-    private JTextArea logArea;
+    private JCheckBox fastExifCheckbox;
+    private JCheckBox skipNamedCheckbox;
+    private JComboBox<ExecutionMode> executionModeBox;
+    private JTextField templateField;
+    private LogListModel logModel;
+    private JList<String> logList;
+    private JScrollPane logScroll;
+    private int logWidth;
+    private JLabel statusLabel;
+    private Timer refreshTimer;
     private JButton dryRunButton;
     private JButton renameButton;
+    private JButton undoButton;
+    private JButton pauseButton;
+    private JButton stopButton;
 
     private Path selectedFolder;
+    // Result of the last dry run, executed by "Rename" if the settings haven't changed
+    private volatile RenamePlan lastPlan;
     private FileRenameService renameService;
+    private final ProgressMeter progress = new ProgressMeter();
+    // EDT only
+    private boolean running;
+    private RenameJob currentJob;
+    private volatile boolean stopRequested;
 
     public PhotoRenamerGUI() {
-        this.renameService = new FileRenameService();
+        this.renameService = new FileRenameService(MetadataCache.open(MetadataCache.DEFAULT_FILE));
         createUI();
     }
 
@@ -45,10 +67,15 @@ public class PhotoRenamerGUI {
 
         frame.setContentPane(mainPanel);
 
+        // Log lines and the status line are pushed to Swing in batches
+        refreshTimer = new Timer(Constants.LOG_REFRESH_MILLIS, e -> refreshLog());
+        refreshTimer.start();
+
         // Window closing handler
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                refreshTimer.stop();
                 renameService.shutdown();
             }
         });
@@ -66,21 +93,45 @@ public class PhotoRenamerGUI {
         pathPanel.add(chooseButton, BorderLayout.EAST);
 
         recursiveCheckbox = new JCheckBox(Constants.RECURSIVE_CHECKBOX, true);
-        recursiveCheckbox.setHorizontalAlignment(SwingConstants.CENTER);
+        fastExifCheckbox = new JCheckBox(Constants.FAST_EXIF_CHECKBOX, false);
+        skipNamedCheckbox = new JCheckBox(Constants.SKIP_NAMED_CHECKBOX, false);
+
+        JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        optionsPanel.add(recursiveCheckbox);
+        optionsPanel.add(fastExifCheckbox);
+        optionsPanel.add(skipNamedCheckbox);
+
+        executionModeBox = new JComboBox<>(ExecutionMode.values());
+        optionsPanel.add(new JLabel(Constants.EXECUTION_MODE_LABEL));
+        optionsPanel.add(executionModeBox);
+
+        templateField = new JTextField(FilenameTemplate.DEFAULT_PATTERN);
+        JPanel templatePanel = new JPanel(new BorderLayout(8, 0));
+        templatePanel.add(new JLabel(Constants.TEMPLATE_LABEL), BorderLayout.WEST);
+        templatePanel.add(templateField, BorderLayout.CENTER);
+
+        JPanel settingsPanel = new JPanel(new BorderLayout());
+        settingsPanel.add(optionsPanel, BorderLayout.NORTH);
+        settingsPanel.add(templatePanel, BorderLayout.SOUTH);
 
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.add(pathPanel, BorderLayout.CENTER);
-        topPanel.add(recursiveCheckbox, BorderLayout.SOUTH);
+        topPanel.add(settingsPanel, BorderLayout.SOUTH);
 
         return topPanel;
     }
 
     private JScrollPane createLogPanel() {
-        logArea = new JTextArea();
-        logArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
-        logArea.setEditable(false);
-
-        return new JScrollPane(logArea);
+        logModel = new LogListModel(Constants.LOG_CAPACITY);
+        logList = new JList<>(logModel);
+        logList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        // Fixed cell sizes keep JList from measuring every row on each change;
+        // the width grows with the longest line in refreshLog()
+        logList.setFixedCellHeight(logList.getFontMetrics(logList.getFont()).getHeight());
+        logList.setFixedCellWidth(1);
+
+        logScroll = new JScrollPane(logList);
+        return logScroll;
     }
 
     private JPanel createButtonPanel() {
@@ -91,11 +142,32 @@ public class PhotoRenamerGUI {
         renameButton.setEnabled(false);
         renameButton.addActionListener(e -> performRename());
 
+        undoButton = new JButton(Constants.UNDO_BUTTON);
+        undoButton.setEnabled(Files.isRegularFile(RenameJournal.DEFAULT_FILE));
+        undoButton.addActionListener(e -> performUndo());
+
+        pauseButton = new JButton(Constants.PAUSE_BUTTON);
+        pauseButton.setEnabled(false);
+        pauseButton.addActionListener(e -> togglePause());
+
+        stopButton = new JButton(Constants.STOP_BUTTON);
+        stopButton.setEnabled(false);
+        stopButton.addActionListener(e -> stop());
+
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(dryRunButton);
         buttonPanel.add(renameButton);
+        buttonPanel.add(undoButton);
+        buttonPanel.add(pauseButton);
+        buttonPanel.add(stopButton);
+
+        statusLabel = new JLabel(" ");
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(statusLabel, BorderLayout.NORTH);
+        bottomPanel.add(buttonPanel, BorderLayout.SOUTH);
 
-        return buttonPanel;
+        return bottomPanel;
     }
 
     private void selectFolder() {
@@ -111,7 +183,9 @@ public class PhotoRenamerGUI {
             if (selected != null && selected.isDirectory()) {
                 selectedFolder = selected.toPath().normalize();
                 pathField.setText(selectedFolder.toString());
-                logArea.setText("");
+                clearLog();
+                statusLabel.setText(" ");
+                lastPlan = null;
                 renameButton.setEnabled(true);
             }
         }
@@ -126,18 +200,17 @@ public class PhotoRenamerGUI {
             return;
         }
 
-        logArea.setText("=== СУХОЙ ЗАПУСК ===\n");
-        setButtonsEnabled(false);
+        RenameConfig config = createConfig(true);
+        if (config == null) {
+            return;
+        }
 
-        RenameConfig config = new RenameConfig(
-                selectedFolder,
-                recursiveCheckbox.isSelected(),
-                true
-        );
+        clearLog();
+        logModel.add("=== СУХОЙ ЗАПУСК ===");
+        setButtonsEnabled(false);
+        startProgress();
 
-        new Thread(() -> {
-            renameService.renamePhotos(config, new GUIProgressListener(true));
-        }).start();
+        currentJob = renameService.start(config, new GUIProgressListener(true));
     }
 
     private void performRename() {
@@ -145,6 +218,11 @@ public class PhotoRenamerGUI {
             return;
         }
 
+        RenameConfig config = createConfig(false);
+        if (config == null) {
+            return;
+        }
+
         int confirm = JOptionPane.showConfirmDialog(frame,
                 "Точно переименовать все файлы в папке?\n" + selectedFolder,
                 "Подтверждение",
@@ -155,30 +233,209 @@ public class PhotoRenamerGUI {
             return;
         }
 
-        logArea.setText("=== ПЕРЕИМЕНОВАНИЕ ===\n");
+        clearLog();
+        logModel.add("=== ПЕРЕИМЕНОВАНИЕ ===");
         setButtonsEnabled(false);
+        startProgress();
+
+        RenamePlan plan = lastPlan;
+        lastPlan = null;
+
+        if (plan != null && plan.matches(config)) {
+            logModel.add("По плану сухого запуска: " + plan.size() + " файлов");
+            currentJob = renameService.start(plan, new GUIProgressListener(false));
+        } else {
+            currentJob = renameService.start(config, new GUIProgressListener(false));
+        }
+    }
 
-        RenameConfig config = new RenameConfig(
-                selectedFolder,
-                recursiveCheckbox.isSelected(),
-                false
-        );
+    private void performUndo() {
+        int confirm = JOptionPane.showConfirmDialog(frame,
+                "Вернуть старые имена всем файлам, переименованным последним запуском?",
+                "Подтверждение",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
 
-        new Thread(() -> {
-            renameService.renamePhotos(config, new GUIProgressListener(false));
-        }).start();
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        clearLog();
+        logModel.add("=== ОТМЕНА ПОСЛЕДНЕГО ЗАПУСКА ===");
+        setButtonsEnabled(false);
+        startProgress();
+        lastPlan = null;
+
+        currentJob = renameService.startUndo(RenameJournal.DEFAULT_FILE, new GUIProgressListener(false));
+    }
+
+    // Offered on start when the journal shows that the last run didn't finish
+    private void offerResume() {
+        RenameJournal.Contents journal;
+        try {
+            if (!Files.isRegularFile(RenameJournal.DEFAULT_FILE)) {
+                return;
+            }
+            journal = RenameJournal.read(RenameJournal.DEFAULT_FILE);
+        } catch (IOException e) {
+            return;
+        }
+        if (journal.isComplete()) {
+            return;
+        }
+
+        int confirm = JOptionPane.showConfirmDialog(frame,
+                "Переименование в папке\n" + journal.getTargetFolder()
+                        + "\nбыло прервано. Продолжить его?\n"
+                        + "(Отменить уже сделанное можно кнопкой «" + Constants.UNDO_BUTTON + "»)",
+                "Прерванный запуск",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE);
+
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        selectedFolder = journal.getTargetFolder();
+        pathField.setText(selectedFolder.toString());
+        clearLog();
+        logModel.add("=== ПРОДОЛЖЕНИЕ ПРЕРВАННОГО ЗАПУСКА ===");
+        setButtonsEnabled(false);
+        startProgress();
+
+        RenameConfig settings = RenameConfig.builder()
+                .executionMode((ExecutionMode) executionModeBox.getSelectedItem())
+                .build();
+        currentJob = renameService.startResume(RenameJournal.DEFAULT_FILE, settings, new GUIProgressListener(false));
+    }
+
+    // Files in progress finish, no new ones are started until "Continue"
+    private void togglePause() {
+        if (currentJob == null) {
+            return;
+        }
+
+        if (currentJob.isPaused()) {
+            currentJob.resume();
+            pauseButton.setText(Constants.PAUSE_BUTTON);
+        } else {
+            currentJob.pause();
+            pauseButton.setText(Constants.CONTINUE_BUTTON);
+        }
+    }
+
+    // Remaining files are left untouched; an interrupted rename can be resumed on next start
+    private void stop() {
+        if (currentJob == null) {
+            return;
+        }
+
+        stopRequested = true;
+        currentJob.cancel();
+        pauseButton.setEnabled(false);
+        stopButton.setEnabled(false);
+        logModel.add("");
+        logModel.add("Остановка: дожидаемся файлов, которые уже в работе...");
+    }
+
+    // The run stopped before onComplete
+    private void failed(Exception e) {
+        logModel.add("Ошибка: " + e.getMessage());
+        SwingUtilities.invokeLater(() -> {
+            refreshLog();
+            running = false;
+            currentJob = null;
+            setButtonsEnabled(true);
+        });
+    }
+
+    // Null if the name template is invalid, the user has already been told why
+    private RenameConfig createConfig(boolean dryRun) {
+        FilenameTemplate template;
+        try {
+            template = FilenameTemplate.compile(templateField.getText().trim());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame,
+                    "Неверный шаблон имени:\n" + e.getMessage(),
+                    "Ошибка",
+                    JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+
+        return RenameConfig.builder()
+                .targetFolder(selectedFolder)
+                .recursive(recursiveCheckbox.isSelected())
+                .dryRun(dryRun)
+                .extractionMode(fastExifCheckbox.isSelected() ? ExtractionMode.FAST : ExtractionMode.LIBRARY)
+                .skipMatchingNames(skipNamedCheckbox.isSelected())
+                .filenameTemplate(template)
+                .executionMode((ExecutionMode) executionModeBox.getSelectedItem())
+                .journalFile(RenameJournal.DEFAULT_FILE)
+                .build();
+    }
+
+    private void clearLog() {
+        logModel.clear();
+        logWidth = 0;
+        logList.setFixedCellWidth(1);
+    }
+
+    private void startProgress() {
+        progress.start(System.nanoTime());
+        running = true;
+        stopRequested = false;
+    }
+
+    // Timer tick on the EDT
+    private void refreshLog() {
+        JScrollBar scrollBar = logScroll.getVerticalScrollBar();
+        boolean atBottom = scrollBar.getValue() + scrollBar.getVisibleAmount()
+                >= scrollBar.getMaximum() - logList.getFixedCellHeight();
+
+        List<String> added = logModel.flush();
+        if (!added.isEmpty()) {
+            FontMetrics metrics = logList.getFontMetrics(logList.getFont());
+            int width = logWidth;
+            for (String line : added) {
+                width = Math.max(width, metrics.stringWidth(line));
+            }
+            if (width > logWidth) {
+                logWidth = width;
+                logList.setFixedCellWidth(width + Constants.PADDING);
+            }
+
+            // Follow the end of the log unless the user has scrolled up
+            if (atBottom) {
+                logList.ensureIndexIsVisible(logModel.getSize() - 1);
+            }
+        }
+
+        if (running) {
+            progress.sample(System.nanoTime());
+            boolean paused = currentJob != null && currentJob.isPaused();
+            statusLabel.setText(paused ? progress.describe() + " · пауза" : progress.describe());
+        }
     }
 
     private void setButtonsEnabled(boolean enabled) {
         SwingUtilities.invokeLater(() -> {
             dryRunButton.setEnabled(enabled);
-            renameButton.setEnabled(enabled);
+            renameButton.setEnabled(enabled && selectedFolder != null);
+            undoButton.setEnabled(enabled && Files.isRegularFile(RenameJournal.DEFAULT_FILE));
             recursiveCheckbox.setEnabled(enabled);
+            fastExifCheckbox.setEnabled(enabled);
+            skipNamedCheckbox.setEnabled(enabled);
+            executionModeBox.setEnabled(enabled);
+            templateField.setEnabled(enabled);
+            pauseButton.setText(Constants.PAUSE_BUTTON);
+            pauseButton.setEnabled(!enabled);
+            stopButton.setEnabled(!enabled);
         });
     }
 
     public void show() {
         frame.setVisible(true);
+        offerResume();
     }
 
     private class GUIProgressListener implements ProgressListener {
@@ -190,45 +447,86 @@ public class PhotoRenamerGUI {
 
         @Override
         public void onStart(int totalFiles) {
-            SwingUtilities.invokeLater(() -> {
-                logArea.append("Найдено файлов: " + totalFiles + "\n\n");
-            });
+            if (totalFiles == UNKNOWN_TOTAL) {
+                return;
+            }
+
+            progress.setTotal(totalFiles, true);
+            logModel.add("Найдено файлов: " + totalFiles);
+            logModel.add("");
+        }
+
+        @Override
+        public void onTotalUpdated(int discoveredFiles, boolean walkComplete) {
+            progress.setTotal(discoveredFiles, walkComplete);
+            if (!walkComplete) {
+                return;
+            }
+
+            logModel.add("");
+            logModel.add("Найдено файлов: " + discoveredFiles);
         }
 
         @Override
         public void onProgress(RenameResult result) {
-            SwingUtilities.invokeLater(() -> {
-                String line = result.toLogString();
+            String line = result.toLogString();
 
-                // Adjust formatting for dry run
-                if (isDryRun && result.getStatus() == RenameResult.Status.SUCCESS) {
-                    line = "→       " + result.getOriginalName() + " → " + result.getNewName();
-                }
+            // Adjust formatting for dry run
+            if (isDryRun && result.getStatus() == RenameResult.Status.SUCCESS) {
+                line = "→       " + result.getOriginalName() + " → " + result.getNewName();
+            }
 
-                logArea.append(line + "\n");
-            });
+            logModel.add(line);
+            progress.fileDone();
+        }
+
+        @Override
+        public void onReadStatistics(ReadStatistics statistics) {
+            long files = statistics.getFilesRead();
+            long bytesPerFile = statistics.getAverageBytesPerFile();
+            long cacheHits = statistics.getCacheHits();
+            long cacheMisses = statistics.getCacheMisses();
+            logModel.add("");
+            logModel.add("Прочитано заголовков: " + files
+                    + " (в среднем " + (bytesPerFile / 1024) + " КБ на файл)");
+            logModel.add("Кэш метаданных: попаданий " + cacheHits + ", промахов " + cacheMisses);
+        }
+
+        @Override
+        public void onFailed(Exception error) {
+            failed(error);
         }
 
         @Override
         public void onComplete(int renamed, int skipped, int errors) {
-            SwingUtilities.invokeLater(() -> {
-                logArea.append("\n=== ГОТОВО ===\n");
-
-                if (isDryRun) {
-                    logArea.append("Могло бы быть переименовано: " + renamed + "\n");
-                    logArea.append("Пропущено: " + (skipped + errors) + "\n");
-                    setButtonsEnabled(true);
-                } else {
-                    logArea.append("Переименовано: " + renamed + "\n");
-                    logArea.append("Пропущено: " + skipped + "\n");
-                    if (errors > 0) {
-                        logArea.append("Ошибок: " + errors + "\n");
-                    }
-                    setButtonsEnabled(true);
+            logModel.add("");
+            logModel.add(stopRequested ? "=== ОСТАНОВЛЕНО ===" : "=== ГОТОВО ===");
+
+            if (isDryRun) {
+                logModel.add("Могло бы быть переименовано: " + renamed);
+                logModel.add("Пропущено: " + (skipped + errors));
+            } else {
+                logModel.add("Переименовано: " + renamed);
+                logModel.add("Пропущено: " + skipped);
+                if (errors > 0) {
+                    logModel.add("Ошибок: " + errors);
                 }
+            }
+
+            for (StoreStatistics store : renameService.getStatistics().getStores()) {
+                logModel.add(String.format("Диск %s: потоков %d, задержка %.1f мс",
+                        store.getStore(), store.getLimit(), store.getLatencyMillis()));
+            }
 
-                // Auto-scroll to bottom
-                logArea.setCaretPosition(logArea.getDocument().getLength());
+            SwingUtilities.invokeLater(() -> {
+                // A stopped dry run has only part of the files in its plan
+                if (isDryRun && !stopRequested) {
+                    lastPlan = currentJob.getPlan();
+                }
+                refreshLog();
+                running = false;
+                currentJob = null;
+                setButtonsEnabled(true);
             });
         }
     }
@@ -0,0 +1,70 @@
+package com.samfort.photorenamer;
+
+import jdk.jfr.EventType;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-stage latency histograms of the current run. Filled only when the run is
+// instrumented; JFR events are produced independently whenever a recording with the
+// PhotoRenamer events enabled is running.
+class PipelineMetrics {
+
+    // Asked per file without creating an event, which would be garbage whenever JFR is off
+    private static final EventType FILE_EVENTS = EventType.getEventType(RenameFileEvent.class);
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private volatile boolean enabled;
+    private volatile long walkNanos;
+
+    PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    void start(boolean enabled) {
+        stages.values().forEach(LatencyHistogram::reset);
+        walkNanos = 0;
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    FileTrace trace(Path file) {
+        boolean recording = FILE_EVENTS.isEnabled();
+        if (!enabled && !recording) {
+            return FileTrace.DISABLED;
+        }
+        return new FileTrace(enabled ? this : null, file, recording ? new RenameFileEvent() : null);
+    }
+
+    void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    // Streaming runs walk while processing, so this includes waiting for free workers
+    void recordWalk(long nanos) {
+        walkNanos = nanos;
+    }
+
+    MetricsSnapshot snapshot(RunStatistics run, ReadStatistics reads) {
+        List<MetricsSnapshot.StageSummary> summaries = new ArrayList<>();
+        for (Map.Entry<Stage, LatencyHistogram> entry : stages.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            summaries.add(new MetricsSnapshot.StageSummary(
+                    entry.getKey(),
+                    histogram.getCount(),
+                    histogram.getTotalNanos() / 1e6,
+                    histogram.percentile(0.50) / 1e3,
+                    histogram.percentile(0.99) / 1e3));
+        }
+        return new MetricsSnapshot(run.getProcessed(), run.getFilesPerSecond(), reads.getBytesRead(),
+                walkNanos / 1e6, summaries);
+    }
+}
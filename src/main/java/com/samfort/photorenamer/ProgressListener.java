@@ -2,8 +2,30 @@ package com.samfort.photorenamer;
 
 public interface ProgressListener {
 
+    // Passed to onStart when files are processed while the folder is still being walked
+    int UNKNOWN_TOTAL = -1;
+
     void onStart(int totalFiles);
+
+    // In streaming mode called from worker threads, in completion order
     void onProgress(RenameResult result);
+
     void onComplete(int renamed, int skipped, int errors);
 
+    // Streaming mode: number of files found so far, final once the walk is complete
+    default void onTotalUpdated(int discoveredFiles, boolean walkComplete) {
+    }
+
+    default void onReadStatistics(ReadStatistics statistics) {
+    }
+
+    // Before onComplete, only for runs with RenameConfig.instrumented set
+    default void onMetrics(MetricsSnapshot metrics) {
+    }
+
+    // A job started in the background stopped as a whole (e.g. the journal could not be
+    // written); onComplete is not called then
+    default void onFailed(Exception error) {
+    }
+
 }
@@ -0,0 +1,105 @@
+package com.samfort.photorenamer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Files done, throughput and time left for the GUI status line. Workers only bump a
+// counter; the rate is sampled by the GUI timer and smoothed, so the ETA doesn't jump
+// around when a slow file or a burst of cache hits comes through.
+class ProgressMeter {
+
+    // Weight of the newest sample; at 100 ms ticks this averages over roughly 2 s
+    private static final double SMOOTHING = 0.05;
+
+    private final AtomicLong processed = new AtomicLong();
+    private volatile long total = ProgressListener.UNKNOWN_TOTAL;
+    private volatile boolean totalFinal;
+
+    // Sampled on the EDT only
+    private long lastNanos;
+    private long lastProcessed;
+    private double filesPerSecond = Double.NaN;
+
+    void start(long nowNanos) {
+        processed.set(0);
+        total = ProgressListener.UNKNOWN_TOTAL;
+        totalFinal = false;
+        lastNanos = nowNanos;
+        lastProcessed = 0;
+        filesPerSecond = Double.NaN;
+    }
+
+    void fileDone() {
+        processed.incrementAndGet();
+    }
+
+    // walkComplete = false means more files may still be found
+    void setTotal(long files, boolean walkComplete) {
+        total = files;
+        totalFinal = walkComplete;
+    }
+
+    void sample(long nowNanos) {
+        long done = processed.get();
+        double seconds = (nowNanos - lastNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+
+        if (done == 0) {
+            // Still walking the folder, the rate starts with the first file
+            lastNanos = nowNanos;
+            return;
+        }
+
+        double rate = (done - lastProcessed) / seconds;
+        if (Double.isNaN(filesPerSecond)) {
+            filesPerSecond = rate;
+        } else {
+            filesPerSecond += SMOOTHING * (rate - filesPerSecond);
+        }
+        lastNanos = nowNanos;
+        lastProcessed = done;
+    }
+
+    long getProcessed() {
+        return processed.get();
+    }
+
+    double getFilesPerSecond() {
+        return Double.isNaN(filesPerSecond) ? 0 : filesPerSecond;
+    }
+
+    // -1 while the total isn't final or nothing has finished yet
+    long getSecondsLeft() {
+        long done = processed.get();
+        if (!totalFinal || total < 0 || !(filesPerSecond > 0)) {
+            return -1;
+        }
+        return Math.round(Math.max(0, total - done) / filesPerSecond);
+    }
+
+    String describe() {
+        StringBuilder text = new StringBuilder("Обработано: ").append(processed.get());
+        if (total >= 0) {
+            text.append(" из ").append(total);
+            if (!totalFinal) {
+                text.append('+');
+            }
+        }
+        text.append(String.format(" · %.0f файлов/с", getFilesPerSecond()));
+
+        long secondsLeft = getSecondsLeft();
+        if (secondsLeft >= 0) {
+            text.append(" · осталось ").append(formatDuration(secondsLeft));
+        }
+        return text.toString();
+    }
+
+    static String formatDuration(long seconds) {
+        long hours = seconds / 3600;
+        long minutes = seconds / 60 % 60;
+        return hours > 0
+                ? String.format("%d:%02d:%02d", hours, minutes, seconds % 60)
+                : String.format("%d:%02d", minutes, seconds % 60);
+    }
+}
@@ -0,0 +1,54 @@
+package com.samfort.photorenamer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-run counter of bytes pulled from disk while reading metadata headers,
+// and of files answered by the metadata cache instead
+public class ReadStatistics {
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder filesRead = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    void record(long bytes) {
+        bytesRead.add(bytes);
+        filesRead.increment();
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    void reset() {
+        bytesRead.reset();
+        filesRead.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getFilesRead() {
+        return filesRead.sum();
+    }
+
+    public long getAverageBytesPerFile() {
+        long files = getFilesRead();
+        return files == 0 ? 0 : getBytesRead() / files;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+}
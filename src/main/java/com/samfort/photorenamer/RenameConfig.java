@@ -8,12 +8,46 @@ import java.nio.file.Path;
 import java.util.Objects;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 public class RenameConfig {
 
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    public static final int DEFAULT_VERIFY_EVERY = 100;
+
     private final Path targetFolder;
     private final boolean recursive;
     private final boolean dryRun;
 
+    // Start processing while the folder is still being walked, with bounded memory
+    private final boolean streaming;
+
+    // Per-stage timing, reported through ProgressListener.onMetrics
+    private final boolean instrumented;
+
+    // Renames are logged here before they happen, for undo and resume; null for none
+    private final Path journalFile;
+
+    // Files whose name the template could have produced are skipped unread, for reruns
+    // over a mostly processed archive
+    private final boolean skipMatchingNames;
+
+    // With skipMatchingNames, every Nth matching file is still read and renamed if its
+    // name went stale; 0 trusts every name
+    @Builder.Default
+    private final int verifyEvery = DEFAULT_VERIFY_EVERY;
+
+    @Builder.Default
+    private final ExtractionMode extractionMode = ExtractionMode.LIBRARY;
+
+    @Builder.Default
+    private final FilenameTemplate filenameTemplate = FilenameTemplate.DEFAULT;
+
+    @Builder.Default
+    private final ExecutionMode executionMode = ExecutionMode.FIXED_POOL;
+
+    // Files read at once in VIRTUAL_THREADS mode, per storage device in ADAPTIVE mode
+    @Builder.Default
+    private final int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
 }
@@ -0,0 +1,27 @@
+package com.samfort.photorenamer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.samfort.photorenamer.File")
+@Label("Rename File")
+@Category("PhotoRenamer")
+@Description("Processing of one file from metadata read to move")
+@StackTrace(false)
+class RenameFileEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Status")
+    String status;
+
+    @Label("New Name")
+    String newName;
+
+    @Label("Message")
+    String message;
+}
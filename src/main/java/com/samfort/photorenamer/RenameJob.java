@@ -0,0 +1,132 @@
+package com.samfort.photorenamer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Handle of a run started with FileRenameService.start(...). Every file passes admit()
+// before anything is read: while paused no new file starts, files already in progress
+// finish. After cancel() the remaining files are dropped without being touched, so the
+// folder is never left with a file half done; a journaled run can be resumed later.
+public class RenameJob {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition unpaused = lock.newCondition();
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger renamed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile Exception failure;
+    // Only for a dry run
+    private volatile RenamePlan plan;
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+            unpaused.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            unpaused.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused && !cancelled;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    // Totals so far; final once the job is done, partial if it was cancelled
+    public int getRenamed() {
+        return renamed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    public int getProcessed() {
+        return getRenamed() + getSkipped() + getErrors();
+    }
+
+    // Why the run stopped as a whole, null if it ran to the end or was cancelled
+    public Exception getFailure() {
+        return failure;
+    }
+
+    // Renames computed by a dry run; complete once the job is done and wasn't cancelled
+    public RenamePlan getPlan() {
+        return plan;
+    }
+
+    // Blocks while the job is paused; false once it is cancelled
+    boolean admit() {
+        if (!paused) {
+            return !cancelled;
+        }
+
+        lock.lock();
+        try {
+            while (paused && !cancelled) {
+                unpaused.awaitUninterruptibly();
+            }
+            return !cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void record(RenameResult result) {
+        switch (result.getStatus()) {
+            case SUCCESS -> renamed.incrementAndGet();
+            case SKIPPED -> skipped.incrementAndGet();
+            case ERROR -> errors.incrementAndGet();
+        }
+    }
+
+    void setPlan(RenamePlan plan) {
+        this.plan = plan;
+    }
+
+    void finish(Exception failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+}
@@ -0,0 +1,469 @@
+package com.samfort.photorenamer;
+
+import lombok.Value;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-ahead log of the renames of one run, so an interrupted run can be resumed and a
+// finished one undone. Before a file is moved its (source, target, size, mtime) record
+// must be on disk; after the move a short "done" record follows without waiting.
+//
+// Nobody fsyncs one by one: whoever finds no write in progress writes everything queued
+// so far with a single force(), the others wait for it (group commit). The service doesn't
+// even wait: it hands each move over with its BEGIN record, and once the force() that
+// covers it is done the journal thread passes the move on to the run's move threads, as
+// many as the run has workers. Workers keep appending during a force(), so one force()
+// covers every file queued meanwhile, even with a single worker.
+//
+// Records after the header: BEGIN id source target size mtime, DONE id, COMPLETE. A record
+// cut short by a crash was never acknowledged, so reading simply stops there.
+public class RenameJournal implements Closeable {
+
+    public static final Path DEFAULT_FILE = Path.of(System.getProperty("user.home"), ".photorenamer", "last-run.journal");
+
+    private static final int MAGIC = 0x50524a4c; // "PRJL"
+    private static final int VERSION = 1;
+
+    private static final byte BEGIN = 1;
+    private static final byte DONE = 2;
+    private static final byte COMPLETE = 3;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition queued = lock.newCondition();
+
+    // Guarded by lock
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream data = new DataOutputStream(buffer);
+    private long nextId;
+    private long appended;
+    private long durable;
+    private boolean writing;
+    private IOException failure;
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+    private Thread committer;
+    private boolean closed;
+
+    // Called on the journal thread once the BEGIN record is on disk, or with the error
+    // that kept it off. Must return quickly, every later record waits for it.
+    interface Durable {
+        void run(long id, IOException error);
+    }
+
+    private record Pending(long sequence, long id, Durable callback) {
+    }
+
+    // One rename; done is false if the run stopped before the move was confirmed
+    @Value
+    public static class Entry {
+        long id;
+        Path source;
+        Path target;
+        long size;
+        long modifiedMillis;
+        boolean done;
+
+        boolean isUnchanged(BasicFileAttributes attributes) {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modifiedMillis;
+        }
+
+        // A move is atomic, so for a record without DONE the file system tells whether it happened
+        public boolean isMoved() {
+            if (done) {
+                return true;
+            }
+            if (!Files.exists(target)) {
+                return false;
+            }
+            if (!Files.exists(source)) {
+                return true;
+            }
+
+            // Both names exist. On a case-insensitive volume a case-only rename (img_1.jpg ->
+            // IMG_1.jpg) reaches the same file under either name; the name stored in the
+            // directory entry tells whether the move happened.
+            try {
+                return Files.isSameFile(source, target)
+                        && target.toRealPath().getFileName().toString().equals(target.getFileName().toString());
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    // Settings the run was started with, and its renames in journal order
+    @Value
+    public static class Contents {
+        Path targetFolder;
+        boolean recursive;
+        ExtractionMode extractionMode;
+        String templatePattern;
+        List<Entry> entries;
+        boolean complete;
+
+        public RenameConfig toConfig(RenameConfig settings) {
+            return settings.toBuilder()
+                    .targetFolder(targetFolder)
+                    .recursive(recursive)
+                    .extractionMode(extractionMode)
+                    .filenameTemplate(FilenameTemplate.compile(templatePattern))
+                    .dryRun(false)
+                    .build();
+        }
+    }
+
+    private RenameJournal(FileChannel channel, long nextId) {
+        this.channel = channel;
+        this.nextId = nextId;
+    }
+
+    // Starts the journal of a new run, replacing the previous one
+    public static RenameJournal create(Path file, RenameConfig config) throws IOException {
+        return write(file, config.getTargetFolder(), config.isRecursive(), config.getExtractionMode(),
+                config.getFilenameTemplate().getPattern(), List.of());
+    }
+
+    // Continues an interrupted run. The journal is rewritten with only the renames that
+    // took place, so moves that never happened don't show up again on undo.
+    public static RenameJournal resume(Path file, Contents contents) throws IOException {
+        List<Entry> moved = new ArrayList<>();
+        for (Entry entry : contents.getEntries()) {
+            if (entry.isMoved()) {
+                moved.add(entry);
+            }
+        }
+        return write(file, contents.getTargetFolder(), contents.isRecursive(), contents.getExtractionMode(),
+                contents.getTemplatePattern(), moved);
+    }
+
+    private static RenameJournal write(Path file, Path targetFolder, boolean recursive, ExtractionMode mode,
+                                       String templatePattern, List<Entry> moved) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(targetFolder.toAbsolutePath().normalize().toString());
+        out.writeBoolean(recursive);
+        out.writeUTF(mode.name());
+        out.writeUTF(templatePattern);
+        long nextId = 0;
+        for (Entry entry : moved) {
+            writeBegin(out, nextId, entry.getSource(), entry.getTarget(), entry.getSize(), entry.getModifiedMillis());
+            out.writeByte(DONE);
+            out.writeLong(nextId++);
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header.toByteArray());
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(file.toAbsolutePath().getParent());
+        return new RenameJournal(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND), nextId);
+    }
+
+    // Returns once the record is on disk; the id is passed to done() after the move
+    long begin(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        long id;
+        long sequence;
+        lock.lock();
+        try {
+            id = nextId++;
+            writeBegin(data, id, source, target, attributes.size(), attributes.lastModifiedTime().toMillis());
+            sequence = ++appended;
+        } finally {
+            lock.unlock();
+        }
+        sync(sequence);
+        return id;
+    }
+
+    // Returns at once; whenDurable runs on the journal thread after the force() that
+    // covers the record
+    void begin(Path source, Path target, BasicFileAttributes attributes, Durable whenDurable) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            long id = nextId++;
+            writeBegin(data, id, source, target, attributes.size(), attributes.lastModifiedTime().toMillis());
+            waiting.add(new Pending(++appended, id, whenDurable));
+            if (committer == null) {
+                committer = new Thread(this::commitLoop, "photo-renamer-journal");
+                committer.setDaemon(true);
+                committer.start();
+            }
+            queued.signal();
+        } catch (IOException e) {
+            // Can't happen with a byte array
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces whatever is queued, then hands the covered records back, and again
+    private void commitLoop() {
+        while (true) {
+            long upTo;
+            lock.lock();
+            try {
+                while (waiting.isEmpty() && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                if (waiting.isEmpty()) {
+                    return;
+                }
+                upTo = waiting.peekLast().sequence();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                sync(upTo);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            List<Pending> covered = new ArrayList<>();
+            lock.lock();
+            try {
+                while (!waiting.isEmpty() && waiting.peekFirst().sequence() <= upTo) {
+                    covered.add(waiting.pollFirst());
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Pending pending : covered) {
+                try {
+                    pending.callback().run(pending.id(), error);
+                } catch (RuntimeException e) {
+                    // A failing listener loses its own file, not the ones behind it
+                }
+            }
+        }
+    }
+
+    // Written with the next batch; losing it in a crash only means the move is checked on disk
+    void done(long id) {
+        lock.lock();
+        try {
+            data.writeByte(DONE);
+            data.writeLong(id);
+            appended++;
+        } catch (IOException e) {
+            // Can't happen with a byte array
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Marks the run as finished, nothing is left to resume
+    void complete() throws IOException {
+        long sequence;
+        lock.lock();
+        try {
+            data.writeByte(COMPLETE);
+            sequence = ++appended;
+        } finally {
+            lock.unlock();
+        }
+        sync(sequence);
+    }
+
+    private void sync(long sequence) throws IOException {
+        byte[] batch;
+        long batchEnd;
+        lock.lock();
+        try {
+            while (true) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (durable >= sequence) {
+                    return;
+                }
+                if (!writing) {
+                    break;
+                }
+                written.awaitUninterruptibly();
+            }
+            // Nobody is writing: take everything queued so far, ours included
+            writing = true;
+            batch = buffer.toByteArray();
+            buffer.reset();
+            batchEnd = appended;
+        } finally {
+            lock.unlock();
+        }
+
+        IOException error = null;
+        try {
+            writeFully(channel, batch);
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        lock.lock();
+        try {
+            writing = false;
+            if (error != null) {
+                failure = error;
+            } else {
+                durable = batchEnd;
+            }
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Lets the journal thread finish the moves handed to it, writes what is still queued
+    // (DONE records) and closes the file
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        lock.lock();
+        try {
+            closed = true;
+            thread = committer;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null) {
+            joinUninterruptibly(thread);
+        }
+
+        try {
+            lock.lock();
+            try {
+                if (failure == null && buffer.size() > 0) {
+                    writeFully(channel, buffer.toByteArray());
+                    buffer.reset();
+                    channel.force(false);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    public static Contents read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a rename journal: " + file);
+            }
+            Path targetFolder = Path.of(in.readUTF());
+            boolean recursive = in.readBoolean();
+            ExtractionMode mode = ExtractionMode.valueOf(in.readUTF());
+            String templatePattern = in.readUTF();
+
+            List<Entry> entries = new ArrayList<>();
+            Map<Long, Integer> indexById = new HashMap<>();
+            boolean complete = false;
+            try {
+                int type;
+                while ((type = in.read()) >= 0) {
+                    if (type == BEGIN) {
+                        Entry entry = new Entry(in.readLong(), Path.of(in.readUTF()), Path.of(in.readUTF()),
+                                in.readLong(), in.readLong(), false);
+                        indexById.put(entry.getId(), entries.size());
+                        entries.add(entry);
+                    } else if (type == DONE) {
+                        Integer index = indexById.get(in.readLong());
+                        if (index != null) {
+                            Entry entry = entries.get(index);
+                            entries.set(index, new Entry(entry.getId(), entry.getSource(), entry.getTarget(),
+                                    entry.getSize(), entry.getModifiedMillis(), true));
+                        }
+                    } else if (type == COMPLETE) {
+                        complete = true;
+                    } else {
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // The last record was cut short by a crash
+            }
+            return new Contents(targetFolder, recursive, mode, templatePattern, entries, complete);
+        }
+    }
+
+    private static void writeBegin(DataOutputStream out, long id, Path source, Path target, long size,
+                                   long modifiedMillis) throws IOException {
+        out.writeByte(BEGIN);
+        out.writeLong(id);
+        out.writeUTF(source.toAbsolutePath().normalize().toString());
+        out.writeUTF(target.toAbsolutePath().normalize().toString());
+        out.writeLong(size);
+        out.writeLong(modifiedMillis);
+    }
+
+    // Until the directory entry is on disk the replaced journal may come back after a crash,
+    // and with it none of the BEGIN records written from now on. Windows can't open a
+    // directory as a channel; NTFS commits the rename in its own log.
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
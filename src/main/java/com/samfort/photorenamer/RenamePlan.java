@@ -0,0 +1,65 @@
+package com.samfort.photorenamer;
+
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Renames computed by a dry run. Executing the plan moves the files directly; only
+// sources whose size or mtime changed since the dry run are planned again. Files the
+// dry run skipped, or that appeared afterwards, are left alone.
+public class RenamePlan {
+
+    private final RenameConfig config;
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    @Value
+    public static class Entry {
+        Path source;
+        Path target;
+        // Target name without the collision counter, used if the target got taken meanwhile
+        String baseName;
+        String extension;
+        long size;
+        long modifiedMillis;
+
+        boolean isUnchanged(BasicFileAttributes attributes) {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modifiedMillis;
+        }
+    }
+
+    RenamePlan(RenameConfig config) {
+        this.config = config;
+    }
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    public RenameConfig getConfig() {
+        return config;
+    }
+
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Whether the plan covers the same files and names as a run with the given settings.
+    // Skipping matching names changes which files the dry run read, so it counts too.
+    public boolean matches(RenameConfig other) {
+        return Objects.equals(config.getTargetFolder(), other.getTargetFolder())
+                && config.isRecursive() == other.isRecursive()
+                && config.isSkipMatchingNames() == other.isSkipMatchingNames()
+                && config.getVerifyEvery() == other.getVerifyEvery()
+                && config.getExtractionMode() == other.getExtractionMode()
+                && config.getFilenameTemplate().getPattern().equals(other.getFilenameTemplate().getPattern());
+    }
+}
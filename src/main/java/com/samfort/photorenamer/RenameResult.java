@@ -3,6 +3,9 @@ package com.samfort.photorenamer;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NonNull;
+import lombok.With;
+
+import java.nio.file.Path;
 
 @Data
 @AllArgsConstructor
@@ -14,17 +17,20 @@ public class RenameResult {
     private final String originalName;
     private final String newName;
     private final String errorMessage;
+    // Full path of the file before the operation, filled in by the service
+    @With
+    private final Path source;
 
     public static RenameResult success(@NonNull String original, @NonNull String newName) {
-        return new RenameResult(Status.SUCCESS, original, newName, null);
+        return new RenameResult(Status.SUCCESS, original, newName, null, null);
     }
 
     public static RenameResult skipped(@NonNull String original, @NonNull String reason) {
-        return new RenameResult(Status.SKIPPED, original, null, reason);
+        return new RenameResult(Status.SKIPPED, original, null, reason, null);
     }
 
     public static RenameResult error(@NonNull String original, @NonNull String error) {
-        return new RenameResult(Status.ERROR, original, null, error);
+        return new RenameResult(Status.ERROR, original, null, error, null);
     }
 
     public String toLogString() {
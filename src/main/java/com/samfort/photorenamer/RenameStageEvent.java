@@ -0,0 +1,21 @@
+package com.samfort.photorenamer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.samfort.photorenamer.Stage")
+@Label("Rename Stage")
+@Category("PhotoRenamer")
+@Description("One step of processing a file")
+@StackTrace(false)
+class RenameStageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("File")
+    String file;
+}
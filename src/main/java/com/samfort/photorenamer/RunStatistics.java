@@ -0,0 +1,78 @@
+package com.samfort.photorenamer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Live totals of the current run. Updated by workers as files finish and safe
+// to read from any thread (GUI timer, metrics) while the run is in progress.
+public class RunStatistics {
+
+    private final LongAdder renamed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final List<AdaptiveLimiter> stores = new CopyOnWriteArrayList<>();
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    void start() {
+        renamed.reset();
+        skipped.reset();
+        errors.reset();
+        stores.clear();
+        endNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    void registerStore(AdaptiveLimiter limiter) {
+        stores.add(limiter);
+    }
+
+    void record(RenameResult result) {
+        switch (result.getStatus()) {
+            case SUCCESS -> renamed.increment();
+            case SKIPPED -> skipped.increment();
+            case ERROR -> errors.increment();
+        }
+    }
+
+    public int getRenamed() {
+        return renamed.intValue();
+    }
+
+    public int getSkipped() {
+        return skipped.intValue();
+    }
+
+    public int getErrors() {
+        return errors.intValue();
+    }
+
+    public int getProcessed() {
+        return getRenamed() + getSkipped() + getErrors();
+    }
+
+    // Current limit, in-flight count and latency of each storage device (ADAPTIVE mode)
+    public List<StoreStatistics> getStores() {
+        return stores.stream().map(AdaptiveLimiter::snapshot).toList();
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000_000.0;
+    }
+
+    public double getFilesPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? getProcessed() / seconds : 0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.samfort.photorenamer;
+
+// Steps of processing one file, timed when RenameConfig.instrumented is set
+public enum Stage {
+    // Metadata read, including cache lookups
+    METADATA,
+    // Template rendering
+    FORMAT,
+    // Finding a free target name
+    RESERVE,
+    // Files.move
+    MOVE
+}
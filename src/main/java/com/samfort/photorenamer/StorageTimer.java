@@ -0,0 +1,24 @@
+package com.samfort.photorenamer;
+
+// Time the current thread has spent in storage calls (header reads, moves). The adaptive
+// limiter measures a task by this instead of wall time, so parsing and formatting, which
+// don't depend on the store, don't count as store latency.
+final class StorageTimer {
+
+    private static final ThreadLocal<long[]> NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private StorageTimer() {
+    }
+
+    static void add(long nanos) {
+        NANOS.get()[0] += nanos;
+    }
+
+    // Runs the task and returns the storage time it added on this thread
+    static long measure(Runnable task) {
+        long[] total = NANOS.get();
+        long before = total[0];
+        task.run();
+        return total[0] - before;
+    }
+}
@@ -0,0 +1,14 @@
+package com.samfort.photorenamer;
+
+import lombok.Value;
+
+// Snapshot of the adaptive concurrency limit of one storage device
+@Value
+public class StoreStatistics {
+
+    String store;
+    int limit;
+    int inFlight;
+    int queued;
+    double latencyMillis;
+}
@@ -0,0 +1,70 @@
+package com.samfort.photorenamer;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifDirectoryBase;
+import com.drew.metadata.exif.makernotes.CanonMakernoteDirectory;
+import com.drew.metadata.exif.makernotes.KodakMakernoteDirectory;
+import com.drew.metadata.exif.makernotes.SamsungType2MakernoteDirectory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Maps each logical field to the tag id that carries it in each directory type, so a
+// lookup checks one tag per directory instead of scanning every tag by name. Directories
+// are visited in metadata order, as the name scan did: the first one holding the tag wins.
+public class TagResolver {
+
+    public enum Field { APERTURE, EXPOSURE_TIME, ISO, FOCAL_LENGTH_35 }
+
+    // Where a field was found. EXIF directories hold the raw typed value; maker notes
+    // may encode it differently and are read through their description.
+    record Match(Directory directory, int tagId) {
+        boolean isExif() {
+            return directory instanceof ExifDirectoryBase;
+        }
+
+        String description() {
+            return directory.getDescription(tagId);
+        }
+    }
+
+    private record Tags(int exifTagId, Map<Class<? extends Directory>, Integer> makernoteTagIds) {
+    }
+
+    private static final Map<Field, Tags> TAGS = new EnumMap<>(Field.class);
+
+    static {
+        // Every ExifDirectoryBase subclass (IFD0, SubIFD, GPS, interop, ...) shares the EXIF tag ids
+        TAGS.put(Field.APERTURE, new Tags(ExifDirectoryBase.TAG_FNUMBER, Map.of(
+                SamsungType2MakernoteDirectory.class, SamsungType2MakernoteDirectory.TagFNumber)));
+
+        TAGS.put(Field.EXPOSURE_TIME, new Tags(ExifDirectoryBase.TAG_EXPOSURE_TIME, Map.of(
+                CanonMakernoteDirectory.class, CanonMakernoteDirectory.ShotInfo.TAG_EXPOSURE_TIME,
+                KodakMakernoteDirectory.class, KodakMakernoteDirectory.TAG_EXPOSURE_TIME,
+                SamsungType2MakernoteDirectory.class, SamsungType2MakernoteDirectory.TagExposureTime)));
+
+        TAGS.put(Field.ISO, new Tags(ExifDirectoryBase.TAG_ISO_EQUIVALENT, Map.of()));
+
+        TAGS.put(Field.FOCAL_LENGTH_35, new Tags(ExifDirectoryBase.TAG_35MM_FILM_EQUIV_FOCAL_LENGTH, Map.of()));
+    }
+
+    // Description of the first directory holding the field, as Tag.getDescription() returns it
+    public static String getDescription(Metadata metadata, Field field) {
+        Match match = find(metadata, field);
+        return match == null ? null : match.description();
+    }
+
+    static Match find(Metadata metadata, Field field) {
+        Tags tags = TAGS.get(field);
+        for (Directory dir : metadata.getDirectories()) {
+            Integer tagId = dir instanceof ExifDirectoryBase
+                    ? Integer.valueOf(tags.exifTagId())
+                    : tags.makernoteTagIds().get(dir.getClass());
+            if (tagId != null && dir.containsTag(tagId)) {
+                return new Match(dir, tagId);
+            }
+        }
+        return null;
+    }
+}
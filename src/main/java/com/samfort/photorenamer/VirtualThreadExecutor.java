@@ -0,0 +1,84 @@
+package com.samfort.photorenamer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Runs every task on its own virtual thread, at most maxConcurrency at a time. Tasks waiting
+// for a permit park without holding a carrier thread. The project targets Java 17, so virtual
+// threads are looked up at runtime; without them a platform pool of the same size is used.
+class VirtualThreadExecutor implements Executor, FileExecutor {
+
+    // No limit of its own, the caller bounds concurrency
+    static final int UNLIMITED = 0;
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadFactory();
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    VirtualThreadExecutor(int maxConcurrency) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            this.delegate = newVirtualThreadExecutor();
+            this.permits = maxConcurrency == UNLIMITED ? null : new Semaphore(maxConcurrency);
+        } else {
+            this.delegate = maxConcurrency == UNLIMITED
+                    ? Executors.newCachedThreadPool()
+                    : Executors.newFixedThreadPool(maxConcurrency);
+            this.permits = null;
+        }
+    }
+
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (permits == null) {
+            delegate.execute(task);
+            return;
+        }
+
+        delegate.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void execute(Path file, Runnable task) {
+        execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    private static MethodHandle findVirtualThreadFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
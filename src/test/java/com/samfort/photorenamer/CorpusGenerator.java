@@ -0,0 +1,337 @@
+package com.samfort.photorenamer;
+
+import lombok.Builder;
+import lombok.Value;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+// Writes a tree of small photos with generated EXIF for scale tests: 1x1 JPEGs with
+// an APP1 segment and 1x1 grayscale TIFFs, some without EXIF and some with broken
+// headers. Files of one burst share the same capture second.
+class CorpusGenerator {
+
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+
+    private static final int TAG_IMAGE_WIDTH = 0x0100;
+    private static final int TAG_IMAGE_LENGTH = 0x0101;
+    private static final int TAG_BITS_PER_SAMPLE = 0x0102;
+    private static final int TAG_PHOTOMETRIC = 0x0106;
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_STRIP_OFFSETS = 0x0111;
+    private static final int TAG_ROWS_PER_STRIP = 0x0116;
+    private static final int TAG_STRIP_BYTE_COUNTS = 0x0117;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_EXPOSURE_TIME = 0x829A;
+    private static final int TAG_F_NUMBER = 0x829D;
+    private static final int TAG_ISO = 0x8827;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_FOCAL_LENGTH = 0x920A;
+    private static final int TAG_FOCAL_LENGTH_35 = 0xA405;
+
+    // Placeholder values, patched once the layout is known
+    private static final int EXIF_IFD_OFFSET = -1;
+    private static final int STRIP_OFFSET = -2;
+
+    private static final byte[] JPEG_BODY = smallestJpeg();
+
+    @Value
+    @Builder
+    static class Spec {
+        @Builder.Default
+        int files = 1000;
+        // Folder levels below the root, and subfolders per folder
+        @Builder.Default
+        int depth = 2;
+        @Builder.Default
+        int fanOut = 3;
+        // Consecutive files with the same capture second
+        @Builder.Default
+        int burstSize = 5;
+        @Builder.Default
+        double tiffShare = 0.1;
+        @Builder.Default
+        double missingExifShare = 0.05;
+        @Builder.Default
+        double corruptShare = 0.02;
+        // Files with the 35mm focal length tag, the rest need a crop factor
+        @Builder.Default
+        double focal35Share = 1.0;
+        @Builder.Default
+        List<String> models = List.of("OPPO Find X9 Pro", "iPhone 15 Pro", "Canon EOS R5");
+        @Builder.Default
+        LocalDateTime start = LocalDateTime.of(2025, 10, 23, 10, 0, 0);
+        @Builder.Default
+        long seed = 42;
+    }
+
+    // One generated file; captureTime is null when the file has no readable date
+    @Value
+    static class Photo {
+        Path file;
+        LocalDateTime captureTime;
+    }
+
+    static List<Photo> generate(Path root, Spec spec) throws IOException {
+        List<Path> folders = new ArrayList<>();
+        addFolders(root, spec.getDepth(), spec.getFanOut(), folders);
+        for (Path folder : folders) {
+            Files.createDirectories(folder);
+        }
+
+        Random random = new Random(spec.getSeed());
+        List<Photo> photos = new ArrayList<>(spec.getFiles());
+        for (int i = 0; i < spec.getFiles(); i++) {
+            Path folder = folders.get(i % folders.size());
+            LocalDateTime time = spec.getStart().plusSeconds(i / spec.getBurstSize());
+            String model = spec.getModels().get(random.nextInt(spec.getModels().size()));
+            boolean tiff = random.nextDouble() < spec.getTiffShare();
+            boolean focal35 = spec.getFocal35Share() >= 1 || random.nextDouble() < spec.getFocal35Share();
+            String name = String.format("IMG_%07d.%s", i, tiff ? "tif" : "jpg");
+
+            double kind = random.nextDouble();
+            byte[] content;
+            LocalDateTime captureTime = null;
+            if (kind < spec.getMissingExifShare()) {
+                content = tiff ? tiff(List.of(), List.of()) : JPEG_BODY;
+            } else if (kind < spec.getMissingExifShare() + spec.getCorruptShare()) {
+                content = corrupt(tiff, exif(time, model, focal35, random), random);
+            } else {
+                Exif exif = exif(time, model, focal35, random);
+                content = tiff ? tiff(exif.ifd0, exif.exifIfd) : withApp1(tiff(exif.ifd0, exif.exifIfd));
+                captureTime = time;
+            }
+
+            Path file = folder.resolve(name);
+            Files.write(file, content);
+            photos.add(new Photo(file, captureTime));
+        }
+        return photos;
+    }
+
+    // EXIF values of a single photo, as {numerator, denominator} for rationals; null
+    // leaves the tag out
+    @Value
+    @Builder
+    static class Shot {
+        @Builder.Default
+        LocalDateTime time = LocalDateTime.of(2025, 10, 23, 10, 41, 14);
+        @Builder.Default
+        String model = "Canon EOS R5";
+        int[] exposure;
+        int[] fNumber;
+        Integer iso;
+        int[] focalLength;
+        Integer focal35;
+    }
+
+    // A 1x1 JPEG carrying exactly the values of the shot, for golden-name tests
+    static void write(Path file, Shot shot) throws IOException {
+        String date = EXIF_DATE.format(shot.getTime());
+        List<Entry> exifIfd = new ArrayList<>();
+        exifIfd.add(ascii(TAG_DATE_TIME_ORIGINAL, date));
+        if (shot.getExposure() != null) {
+            exifIfd.add(rational(TAG_EXPOSURE_TIME, shot.getExposure()[0], shot.getExposure()[1]));
+        }
+        if (shot.getFNumber() != null) {
+            exifIfd.add(rational(TAG_F_NUMBER, shot.getFNumber()[0], shot.getFNumber()[1]));
+        }
+        if (shot.getIso() != null) {
+            exifIfd.add(shortValue(TAG_ISO, shot.getIso()));
+        }
+        if (shot.getFocalLength() != null) {
+            exifIfd.add(rational(TAG_FOCAL_LENGTH, shot.getFocalLength()[0], shot.getFocalLength()[1]));
+        }
+        if (shot.getFocal35() != null) {
+            exifIfd.add(shortValue(TAG_FOCAL_LENGTH_35, shot.getFocal35()));
+        }
+        List<Entry> ifd0 = List.of(ascii(TAG_MODEL, shot.getModel()), ascii(TAG_DATE_TIME, date));
+        Files.write(file, withApp1(tiff(ifd0, exifIfd)));
+    }
+
+    static void delete(Path root) throws IOException {
+        try (var files = Files.walk(root)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void addFolders(Path folder, int depth, int fanOut, List<Path> folders) {
+        folders.add(folder);
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            addFolders(folder.resolve("d" + i), depth - 1, fanOut, folders);
+        }
+    }
+
+    // Truncated inside the IFDs, or with an unknown byte order mark. A bad IFD0 offset
+    // wouldn't do: metadata-extractor falls back to the usual offset 8 and reads it anyway
+    private static byte[] corrupt(boolean tiff, Exif exif, Random random) {
+        byte[] header = tiff(exif.ifd0, exif.exifIfd);
+        if (random.nextBoolean()) {
+            header[0] = 'X';
+            header[1] = 'X';
+        } else {
+            header = Arrays.copyOf(header, 24);
+        }
+        return tiff ? header : withApp1(header);
+    }
+
+    private record Exif(List<Entry> ifd0, List<Entry> exifIfd) {
+    }
+
+    private static Exif exif(LocalDateTime time, String model, boolean focal35, Random random) {
+        String date = EXIF_DATE.format(time);
+        int[] denominators = {60, 125, 250, 364, 1000, 4000};
+        int[] fNumbers = {14, 18, 21, 28, 40, 56, 80};
+        int[] isos = {50, 100, 200, 400, 800, 3200};
+
+        List<Entry> ifd0 = List.of(
+                ascii(TAG_MAKE, model.split(" ")[0]),
+                ascii(TAG_MODEL, model),
+                ascii(TAG_DATE_TIME, date));
+        List<Entry> exifIfd = new ArrayList<>(List.of(
+                rational(TAG_EXPOSURE_TIME, 1, denominators[random.nextInt(denominators.length)]),
+                rational(TAG_F_NUMBER, fNumbers[random.nextInt(fNumbers.length)], 10),
+                shortValue(TAG_ISO, isos[random.nextInt(isos.length)]),
+                ascii(TAG_DATE_TIME_ORIGINAL, date),
+                rational(TAG_FOCAL_LENGTH, 24 + random.nextInt(50), 10)));
+        int focal35Value = 24 + random.nextInt(100);
+        if (focal35) {
+            exifIfd.add(shortValue(TAG_FOCAL_LENGTH_35, focal35Value));
+        }
+        return new Exif(ifd0, exifIfd);
+    }
+
+    // Little-endian TIFF with a single 8-bit gray pixel, the given IFD0 tags and an EXIF IFD
+    private static byte[] tiff(List<Entry> tags, List<Entry> exifTags) {
+        List<Entry> ifd0 = new ArrayList<>(tags);
+        ifd0.add(longValue(TAG_IMAGE_WIDTH, 1));
+        ifd0.add(longValue(TAG_IMAGE_LENGTH, 1));
+        ifd0.add(shortValue(TAG_BITS_PER_SAMPLE, 8));
+        ifd0.add(shortValue(TAG_PHOTOMETRIC, 1));
+        ifd0.add(longValue(TAG_STRIP_OFFSETS, STRIP_OFFSET));
+        ifd0.add(longValue(TAG_ROWS_PER_STRIP, 1));
+        ifd0.add(longValue(TAG_STRIP_BYTE_COUNTS, 1));
+        if (!exifTags.isEmpty()) {
+            ifd0.add(longValue(TAG_EXIF_IFD, EXIF_IFD_OFFSET));
+        }
+        ifd0.sort(Comparator.comparingInt(Entry::tag));
+        List<Entry> exifIfd = new ArrayList<>(exifTags);
+        exifIfd.sort(Comparator.comparingInt(Entry::tag));
+
+        int ifd0Offset = 8;
+        int exifOffset = ifd0Offset + ifdSize(ifd0);
+        int pixelOffset = exifOffset + (exifIfd.isEmpty() ? 0 : ifdSize(exifIfd));
+
+        ByteBuffer out = ByteBuffer.allocate(pixelOffset + 1).order(ByteOrder.LITTLE_ENDIAN);
+        out.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifd0Offset);
+        writeIfd(out, ifd0Offset, ifd0, exifOffset, pixelOffset);
+        if (!exifIfd.isEmpty()) {
+            writeIfd(out, exifOffset, exifIfd, exifOffset, pixelOffset);
+        }
+        out.put(pixelOffset, (byte) 0x80);
+        return out.array();
+    }
+
+    private static int ifdSize(List<Entry> entries) {
+        int size = 2 + entries.size() * 12 + 4;
+        for (Entry entry : entries) {
+            if (entry.value().length > 4) {
+                size += entry.value().length + (entry.value().length & 1);
+            }
+        }
+        return size;
+    }
+
+    private static void writeIfd(ByteBuffer out, int offset, List<Entry> entries, int exifOffset, int pixelOffset) {
+        int data = offset + 2 + entries.size() * 12 + 4;
+        out.position(offset);
+        out.putShort((short) entries.size());
+        for (Entry entry : entries) {
+            out.putShort((short) entry.tag()).putShort((short) entry.type()).putInt(entry.count());
+            byte[] value = entry.value();
+            if (entry.type() == TYPE_LONG) {
+                int number = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                out.putInt(number == EXIF_IFD_OFFSET ? exifOffset : number == STRIP_OFFSET ? pixelOffset : number);
+            } else if (value.length <= 4) {
+                out.put(Arrays.copyOf(value, 4));
+            } else {
+                out.putInt(data);
+                out.put(data, value);
+                data += value.length + (value.length & 1);
+            }
+        }
+        out.putInt(0); // no next IFD
+    }
+
+    private record Entry(int tag, int type, int count, byte[] value) {
+    }
+
+    private static Entry ascii(int tag, String text) {
+        byte[] bytes = (text + "\0").getBytes(StandardCharsets.US_ASCII);
+        return new Entry(tag, TYPE_ASCII, bytes.length, bytes);
+    }
+
+    private static Entry shortValue(int tag, int value) {
+        byte[] bytes = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) value).array();
+        return new Entry(tag, TYPE_SHORT, 1, bytes);
+    }
+
+    private static Entry longValue(int tag, int value) {
+        byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+        return new Entry(tag, TYPE_LONG, 1, bytes);
+    }
+
+    private static Entry rational(int tag, int numerator, int denominator) {
+        byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(numerator).putInt(denominator).array();
+        return new Entry(tag, TYPE_RATIONAL, 1, bytes);
+    }
+
+    // SOI, APP1 "Exif" with the TIFF block, then the rest of the 1x1 JPEG
+    private static byte[] withApp1(byte[] tiff) {
+        int length = 2 + 6 + tiff.length;
+        ByteBuffer out = ByteBuffer.allocate(2 + 2 + length + JPEG_BODY.length - 2);
+        out.put(JPEG_BODY, 0, 2);
+        out.putShort((short) 0xFFE1).putShort((short) length);
+        out.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+        out.put(JPEG_BODY, 2, JPEG_BODY.length - 2);
+        return out.array();
+    }
+
+    private static byte[] smallestJpeg() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY), "jpg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,18 +1,63 @@
 package com.samfort.photorenamer;
 
+import com.drew.imaging.ImageProcessingException;
+import com.drew.lang.Rational;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifDirectoryBase;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.exif.makernotes.CanonMakernoteDirectory;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.withinPercentage;
 import static org.junit.jupiter.api.Assertions.*;
 
 class PhotoRenamerTest {
 
     private final FileRenameService fileRenameService = new FileRenameService();
 
+    private static final DateTimeFormatter DATE_PREFIX = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
     private final String testFileName = "IMG20251023104114_res.jpg";
 
     @Test
@@ -48,4 +93,1187 @@ class PhotoRenamerTest {
         assertTrue(Files.exists(testFile));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testProcessFileReadsMetadataOnce() throws Exception {
+        var testFile = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+
+        // Считаем, сколько раз файл открывается и разбирается
+        var reads = new AtomicInteger();
+        var countingService = new FileRenameService(new ExifMetadataService() {
+            @Override
+            Metadata readMetadata(Path file) throws ImageProcessingException, IOException {
+                reads.incrementAndGet();
+                return super.readMetadata(file);
+            }
+        });
+
+        var result = countingService.processFile(testFile, true);
+
+        assertThat(result.getStatus()).isEqualTo(RenameResult.Status.SUCCESS);
+        assertThat(reads).hasValue(1);
+    }
+
+    @Test
+    void testHeaderReadsOnlyPartOfTheFile(@TempDir Path dir) throws Exception {
+        var testFile = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        long size = Files.size(testFile);
+
+        // С диска читаются заголовки, а не сжатые данные изображения
+        for (var mode : ExtractionMode.values()) {
+            var service = new ExifMetadataService();
+            assertThat(service.extractMetadata(testFile, mode).hasCaptureTime()).isTrue();
+            assertThat(service.getReadStatistics().getFilesRead()).isEqualTo(1);
+            assertThat(service.getReadStatistics().getAverageBytesPerFile()).isPositive().isLessThan(size / 2);
+        }
+
+        // Файл укоротили после открытия: чтение за его концом возвращает -1, а не 0
+        var truncated = Files.write(dir.resolve("truncated.jpg"), new byte[100]);
+        try (var channel = FileChannel.open(truncated, StandardOpenOption.READ)) {
+            var stream = new ChannelInputStream(channel, 64 * 1024);
+            assertThat(stream.skip(200)).isEqualTo(200);
+            assertThat(stream.read(new byte[16], 0, 16)).isEqualTo(-1);
+            assertThat(stream.read(new byte[16 * 1024], 0, 16 * 1024)).isEqualTo(-1);
+            assertThat(stream.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void testFastExtractionMatchesLibrary() throws Exception {
+        var testFile = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+
+        // Быстрый разбор должен справиться с файлом сам, без отката на библиотеку
+        var fast = new ExifTagParser(new ReadStatistics()).parse(testFile);
+        assertThat(fast).isNotNull();
+
+        var library = new ExifMetadataService().extractMetadata(testFile, ExtractionMode.LIBRARY);
+        assertThat(fast).isEqualTo(library);
+
+        var formatter = new FilenameFormatter();
+        assertThat(formatter.formatFilename(fast)).isEqualTo(formatter.formatFilename(library));
+    }
+
+    @Test
+    void testTagLookupFollowsMetadataOrder() {
+        var makernote = new CanonMakernoteDirectory();
+        makernote.setInt(CanonMakernoteDirectory.ShotInfo.TAG_EXPOSURE_TIME, 160);
+        var gps = new GpsDirectory();
+        gps.setRational(ExifDirectoryBase.TAG_FNUMBER, new Rational(28, 10));
+        gps.setInt(ExifDirectoryBase.TAG_ISO_EQUIVALENT, 400);
+        var subIfd = new ExifSubIFDDirectory();
+        subIfd.setRational(ExifDirectoryBase.TAG_FNUMBER, new Rational(56, 10));
+        subIfd.setRational(ExifDirectoryBase.TAG_EXPOSURE_TIME, new Rational(1, 250));
+
+        // Как и поиск по имени тега: побеждает первый каталог в порядке метаданных, включая GPS и maker notes
+        var metadata = new Metadata();
+        metadata.addDirectory(gps);
+        metadata.addDirectory(makernote);
+        metadata.addDirectory(subIfd);
+
+        assertThat(TagResolver.find(metadata, TagResolver.Field.APERTURE).directory()).isSameAs(gps);
+        assertThat(TagResolver.find(metadata, TagResolver.Field.ISO).directory()).isSameAs(gps);
+        assertThat(TagResolver.find(metadata, TagResolver.Field.EXPOSURE_TIME).directory()).isSameAs(makernote);
+        assertThat(TagResolver.find(metadata, TagResolver.Field.FOCAL_LENGTH_35)).isNull();
+
+        var reordered = new Metadata();
+        reordered.addDirectory(subIfd);
+        reordered.addDirectory(makernote);
+        reordered.addDirectory(gps);
+
+        assertThat(TagResolver.getDescription(reordered, TagResolver.Field.APERTURE)).isEqualTo("f/5.6");
+        assertThat(TagResolver.getDescription(reordered, TagResolver.Field.EXPOSURE_TIME)).isEqualTo("1/250 sec");
+        assertThat(TagResolver.getDescription(reordered, TagResolver.Field.ISO)).isEqualTo("400");
+    }
+
+    @Test
+    void testMetadataCacheSkipsUnchangedFiles(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var photo = Files.copy(source, dir.resolve(testFileName));
+        var cacheFile = dir.resolve("metadata.cache");
+
+        var reads = new AtomicInteger();
+        var first = countingService(MetadataCache.open(cacheFile), reads);
+        var expected = first.extractMetadata(photo, ExtractionMode.LIBRARY);
+        first.flushCache();
+
+        // Новый экземпляр читает кэш с диска и не открывает файл повторно
+        var second = countingService(MetadataCache.open(cacheFile), reads);
+        assertThat(second.extractMetadata(photo, ExtractionMode.LIBRARY)).isEqualTo(expected);
+        assertThat(reads).hasValue(1);
+        assertThat(second.getReadStatistics().getCacheHits()).isEqualTo(1);
+
+        // Изменённое время модификации делает запись недействительной
+        Files.setLastModifiedTime(photo, FileTime.fromMillis(0));
+        assertThat(second.extractMetadata(photo, ExtractionMode.LIBRARY)).isEqualTo(expected);
+        assertThat(reads).hasValue(2);
+        assertThat(second.getReadStatistics().getCacheMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void testMetadataCacheEvictsLeastRecentlyUsed(@TempDir Path dir) throws Exception {
+        var cache = MetadataCache.open(dir.resolve("metadata.cache"), 10, MetadataCache.DEFAULT_MAX_FILE_BYTES);
+        var files = new ArrayList<Path>();
+        for (int i = 0; i < 30; i++) {
+            files.add(Files.createFile(dir.resolve(i + ".jpg")));
+        }
+        var metadata = PhotoMetadata.builder().captureTime(0).model("Test").build();
+
+        var first = files.get(0);
+        cache.put(first, Files.readAttributes(first, BasicFileAttributes.class), metadata);
+        // Файл уже есть, дальше записи дописываются в конец
+        cache.flush();
+        for (var file : files.subList(1, files.size())) {
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            cache.put(file, attributes, metadata);
+            // Первый файл нужен постоянно и не вытесняется
+            assertThat(cache.get(first, Files.readAttributes(first, BasicFileAttributes.class))).isNotNull();
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        var last = files.get(files.size() - 1);
+        assertThat(cache.get(last, Files.readAttributes(last, BasicFileAttributes.class))).isNotNull();
+        assertThat(cache.get(files.get(1), Files.readAttributes(files.get(1), BasicFileAttributes.class))).isNull();
+
+        // Вытесненные записи не возвращаются из файла при следующей загрузке
+        cache.flush();
+        var reopened = MetadataCache.open(dir.resolve("metadata.cache"), 10, MetadataCache.DEFAULT_MAX_FILE_BYTES);
+        assertThat(reopened.size()).isEqualTo(cache.size());
+        assertThat(reopened.get(files.get(1), Files.readAttributes(files.get(1), BasicFileAttributes.class))).isNull();
+        assertThat(reopened.get(first, Files.readAttributes(first, BasicFileAttributes.class))).isNotNull();
+    }
+
+    @Test
+    void testCachedFocalLengthFollowsCropFactorTable(@TempDir Path dir) throws Exception {
+        var photo = CorpusGenerator.generate(dir.resolve("photos"), CorpusGenerator.Spec.builder()
+                .files(1)
+                .depth(0)
+                .models(List.of("TestCam X1"))
+                .tiffShare(0)
+                .missingExifShare(0)
+                .corruptShare(0)
+                .focal35Share(0)
+                .build()).get(0).getFile();
+        var cacheFile = dir.resolve("metadata.cache");
+        var userTable = dir.resolve("crop-factors.txt");
+        var reads = new AtomicInteger();
+        try {
+            Files.writeString(userTable, "exact: TestCam X1 = 2.0\n");
+            CropFactorDatabase.loadUserTable(userTable);
+            var first = countingService(MetadataCache.open(cacheFile), reads);
+            var before = first.extractMetadata(photo, ExtractionMode.LIBRARY);
+            first.flushCache();
+            assertThat(before.isFocalEstimated()).isTrue();
+            assertThat(before.getFocalLength()).isEqualTo(Math.round(before.getRealFocalLength() * 2));
+
+            // Таблицу поправили между запусками: запись из кэша пересчитывается без чтения файла
+            Files.writeString(userTable, "exact: TestCam X1 = 4.0\n");
+            CropFactorDatabase.loadUserTable(userTable);
+            var second = countingService(MetadataCache.open(cacheFile), reads);
+            var after = second.extractMetadata(photo, ExtractionMode.LIBRARY);
+            assertThat(reads).hasValue(1);
+            assertThat(second.getReadStatistics().getCacheHits()).isEqualTo(1);
+            assertThat(after.isFocalEstimated()).isTrue();
+            assertThat(after.getFocalLength()).isEqualTo(Math.round(before.getRealFocalLength() * 4));
+
+            // Модели больше нет в таблице
+            Files.writeString(userTable, "");
+            CropFactorDatabase.loadUserTable(userTable);
+            var unknown = second.extractMetadata(photo, ExtractionMode.LIBRARY);
+            assertThat(reads).hasValue(1);
+            assertThat(unknown.getFocalLength()).isEqualTo(PhotoMetadata.NO_VALUE);
+            assertThat(unknown.isFocalEstimated()).isFalse();
+        } finally {
+            Files.writeString(userTable, "");
+            CropFactorDatabase.loadUserTable(userTable);
+        }
+    }
+
+    @Test
+    void testExecutePlanRereadsOnlyChangedFiles(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var unchanged = Files.copy(source, dir.resolve("a.jpg"));
+        var changed = Files.copy(source, dir.resolve("b.jpg"));
+
+        var reads = new AtomicInteger();
+        var service = new FileRenameService(countingService(null, reads));
+        var config = RenameConfig.builder().targetFolder(dir).build();
+
+        var plan = service.planRenames(config, new TestListener());
+        assertThat(plan.size()).isEqualTo(2);
+        assertThat(reads).hasValue(2);
+
+        // План годится только для тех же настроек, включая пропуск уже названных файлов
+        assertTrue(plan.matches(config.toBuilder().dryRun(true).build()));
+        assertFalse(plan.matches(config.toBuilder().skipMatchingNames(true).build()));
+        assertFalse(plan.matches(config.toBuilder().verifyEvery(10).build()));
+
+        // Файл изменился после сухого запуска: только он разбирается заново
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(0));
+        service.executePlan(plan, new TestListener());
+
+        assertThat(reads).hasValue(3);
+        assertThat(service.getStatistics().getRenamed()).isEqualTo(2);
+        assertFalse(Files.exists(unchanged));
+        assertFalse(Files.exists(changed));
+        try (var files = Files.list(dir)) {
+            assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder(
+                    "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50.jpg",
+                    "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50_1.jpg");
+        }
+        service.shutdown();
+    }
+
+    @Test
+    void testParallelRenameOfSameSecondFilesHasNoCollisions(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+
+        // Тысячи кадров с одинаковым временем съёмки дают одно и то же базовое имя
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            Files.copy(source, dir.resolve("IMG_" + i + ".jpg"));
+        }
+
+        var service = new FileRenameService();
+        var config = RenameConfig.builder()
+                .targetFolder(dir)
+                .extractionMode(ExtractionMode.FAST)
+                .executionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // Сухой запуск тоже не должен выдавать одно имя двум файлам
+        var planned = new ConcurrentLinkedQueue<String>();
+        service.renamePhotos(config.dryRun(true).build(), new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                planned.add(result.getNewName());
+            }
+        });
+        assertThat(planned).hasSize(count).doesNotHaveDuplicates();
+
+        service.renamePhotos(config.dryRun(false).build(), new TestListener());
+
+        assertThat(service.getStatistics().getRenamed()).isEqualTo(count);
+        assertThat(service.getStatistics().getErrors()).isZero();
+        try (var files = Files.list(dir)) {
+            var expectedBase = "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50";
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .hasSize(count)
+                    .allMatch(name -> name.startsWith(expectedBase));
+        }
+        service.shutdown();
+    }
+
+    @Test
+    void testResultsArriveInCompletionOrderWithLiveTotals(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var names = List.of("a.jpg", "b.jpg", "c.jpg", "d.jpg", "e.jpg");
+        for (var name : names) {
+            Files.copy(source, dir.resolve(name));
+        }
+
+        // Первый файл разбирается, пока остальные не будут выданы слушателю
+        var othersReported = new CountDownLatch(names.size() - 1);
+        var service = new FileRenameService(new ExifMetadataService() {
+            @Override
+            public PhotoMetadata extractMetadata(Path file, ExtractionMode mode) {
+                if (file.getFileName().toString().equals("a.jpg")) {
+                    try {
+                        othersReported.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.extractMetadata(file, mode);
+            }
+        });
+        var reported = new ConcurrentLinkedQueue<String>();
+        var processedSeen = new ConcurrentLinkedQueue<Integer>();
+        var processedAtComplete = new AtomicInteger(-1);
+        var config = RenameConfig.builder()
+                .targetFolder(dir)
+                .dryRun(true)
+                .executionMode(ExecutionMode.VIRTUAL_THREADS)
+                .build();
+
+        service.renamePhotos(config, new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                reported.add(result.getOriginalName());
+                // Итоги видны уже во время запуска, а не только к onComplete
+                processedSeen.add(service.getStatistics().getProcessed());
+                othersReported.countDown();
+            }
+
+            @Override
+            public void onComplete(int renamed, int skipped, int errors) {
+                processedAtComplete.set(renamed + skipped + errors);
+            }
+        });
+
+        assertThat(reported).hasSize(names.size()).last().isEqualTo("a.jpg");
+        // К моменту выдачи i-го результата он и все предыдущие уже посчитаны
+        var seen = List.copyOf(processedSeen);
+        for (int i = 0; i < seen.size(); i++) {
+            assertThat(seen.get(i)).isGreaterThan(i);
+        }
+        assertThat(processedAtComplete).hasValue(names.size());
+        service.shutdown();
+    }
+
+    @Test
+    void testFilenameTemplate() {
+        var metadata = PhotoMetadata.builder()
+                .captureDateTime(ZonedDateTime.of(2025, 10, 23, 10, 41, 14, 0, ZoneOffset.UTC))
+                .model("OPPO Find X9 Pro")
+                .apertureTenths(21)
+                .build();
+
+        // Группа в квадратных скобках пропадает целиком, если поля нет
+        var template = FilenameTemplate.compile("{date:yyyy-MM-dd}[_{model}][_{focal}mm]_F{aperture}");
+        assertThat(template.render(metadata)).isEqualTo("2025-10-23_OPPO Find X9 Pro_F2.1");
+
+        assertThat(FilenameTemplate.DEFAULT.render(metadata))
+                .isEqualTo("20251023_104114_OPPO Find X9 Pro_F2.1");
+
+        // Выдержка хранится дробью: длинные выдержки в секундах, короткие как 1-N
+        var exposures = FilenameTemplate.compile("{shutter}");
+        assertThat(exposures.render(metadata.toBuilder().exposureNumerator(1).exposureDenominator(364).build()))
+                .isEqualTo("1-364");
+        assertThat(exposures.render(metadata.toBuilder().exposureNumerator(10).exposureDenominator(4000).build()))
+                .isEqualTo("1-400");
+        assertThat(exposures.render(metadata.toBuilder().exposureNumerator(5).exposureDenominator(3).build()))
+                .isEqualTo("2s");
+
+        // Недопустимые в имени файла символы и ошибки синтаксиса отклоняются сразу
+        assertThrows(IllegalArgumentException.class, () -> FilenameTemplate.compile("{date:HH:mm}"));
+        assertThrows(IllegalArgumentException.class, () -> FilenameTemplate.compile("{model}/{iso}"));
+        assertThrows(IllegalArgumentException.class, () -> FilenameTemplate.compile("[_{model}"));
+        assertThrows(IllegalArgumentException.class, () -> FilenameTemplate.compile("{lens}"));
+    }
+
+    // Имена, которые давала исходная версия (описания тегов из metadata-extractor), в том
+    // числе для странных значений: и быстрый разбор, и библиотека должны совпадать байт в байт
+    @Test
+    void testDefaultNamesMatchBaselineOnEdgeValues(@TempDir Path dir) throws Exception {
+        var golden = new LinkedHashMap<CorpusGenerator.Shot, String>();
+        // Библиотека описывает 1/100 как «0.01 sec», 2/1 как «2 sec»: такие выдержки в имя не попадали
+        golden.put(shot().exposure(new int[]{1, 200}).build(), "_1-200");
+        golden.put(shot().exposure(new int[]{1, 100}).build(), "");
+        golden.put(shot().exposure(new int[]{1, 2}).build(), "");
+        golden.put(shot().exposure(new int[]{3, 10}).build(), "");
+        golden.put(shot().exposure(new int[]{2, 1}).build(), "");
+        golden.put(shot().exposure(new int[]{30, 1}).build(), "");
+        golden.put(shot().exposure(new int[]{25, 10}).build(), "");
+        golden.put(shot().exposure(new int[]{1, 8}).build(), "_1-8");
+        golden.put(shot().exposure(new int[]{10, 1300}).build(), "_1-130");
+        golden.put(shot().exposure(new int[]{5, 3}).build(), "_2s");
+        golden.put(shot().exposure(new int[]{4, 3}).build(), "_1s");
+        golden.put(shot().exposure(new int[]{1, 0}).build(), "_1-0");
+        // Тег 35 мм, равный 0, библиотека описывает как «Unknown», и он важнее оценки по кроп-фактору
+        golden.put(shot().focal35(0).build(), "_Unknown");
+        golden.put(shot().model("iPhone 15 Pro").focal35(0).focalLength(new int[]{26, 1}).build(), "_Unknown");
+        golden.put(shot().focal35(140).build(), "_140_mm");
+        golden.put(shot().model("iPhone 15 Pro").focalLength(new int[]{558, 100}).build(), "_39");
+        golden.put(shot().model("iPhone 15 Pro").focalLength(new int[]{0, 1}).build(), "_0");
+        // Нулевые диафрагма и ISO попадают в имя как есть
+        golden.put(shot().fNumber(new int[]{0, 1}).build(), "_F0.0");
+        golden.put(shot().fNumber(new int[]{1, 0}).build(), "");
+        golden.put(shot().fNumber(new int[]{225, 100}).build(), "_F2.3");
+        golden.put(shot().iso(0).build(), "_ISO0");
+        golden.put(shot().exposure(new int[]{0, 1}).fNumber(new int[]{0, 1}).iso(0).focal35(0).build(),
+                "_Unknown_F0.0_ISO0");
+
+        var service = new FileRenameService();
+        var file = dir.resolve("photo.jpg");
+        for (var entry : golden.entrySet()) {
+            CorpusGenerator.write(file, entry.getKey());
+            var expected = "20251023_104114_" + entry.getKey().getModel() + entry.getValue() + ".jpg";
+            for (var mode : ExtractionMode.values()) {
+                var config = RenameConfig.builder().targetFolder(dir).dryRun(true).extractionMode(mode).build();
+                assertThat(service.processFile(file, config).getNewName()).as("%s, %s", entry.getKey(), mode)
+                        .isEqualTo(expected);
+            }
+        }
+        service.shutdown();
+    }
+
+    private static CorpusGenerator.Shot.ShotBuilder shot() {
+        return CorpusGenerator.Shot.builder();
+    }
+
+    @Test
+    void testCropFactorTable() throws Exception {
+        var table = CropFactorDatabase.parse(new BufferedReader(new StringReader("""
+                # точное совпадение проверяется раньше регулярных выражений
+                exact: iPhone  15 = 6.1
+                regex: iPhone\\s*15 = 6.9
+                regex: iPhone = 5.7
+                """)), "test");
+
+        assertThat(table.lookup("iphone 15")).isEqualTo(6.1);
+        assertThat(table.lookup("iPhone 15 Plus")).isEqualTo(6.9);
+        assertThat(table.lookup("iPhone 8")).isEqualTo(5.7);
+        assertThat(table.lookup("Canon EOS R5")).isNull();
+        assertThat(table.lookup(null)).isNull();
+
+        // Встроенная таблица работает как раньше
+        assertThat(CropFactorDatabase.getCropFactor("iPhone 16 Pro")).isEqualTo(7.0);
+        assertThat(CropFactorDatabase.getCropFactor("Galaxy S24 Ultra")).isEqualTo(6.6);
+    }
+
+    @Test
+    void testCommandLineWritesNdjson(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        Files.copy(source, dir.resolve("a.jpg"));
+        Files.createDirectory(dir.resolve("sub"));
+        Files.writeString(dir.resolve("sub").resolve("b.jpg"), "not a photo");
+
+        var out = new StringWriter();
+        var err = new ByteArrayOutputStream();
+        int exitCode = CommandLine.run(new String[]{"--dry-run", "--no-cache", dir.toString()},
+                out, new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        // Каждая строка — отдельный JSON-объект; пути относительно папки запуска
+        assertThat(exitCode).isEqualTo(CommandLine.EXIT_OK);
+        assertThat(out.toString().lines().filter(line -> !line.contains("\"statistics\"")))
+                .containsExactlyInAnyOrder(
+                        "{\"event\":\"start\",\"total\":2}",
+                        "{\"event\":\"file\",\"status\":\"SUCCESS\",\"source\":\"a.jpg\","
+                                + "\"target\":\"20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50.jpg\"}",
+                        "{\"event\":\"file\",\"status\":\"SKIPPED\",\"source\":\"sub/b.jpg\",\"message\":\"No EXIF date\"}",
+                        "{\"event\":\"complete\",\"renamed\":1,\"skipped\":1,\"errors\":0}");
+        assertThat(Files.exists(dir.resolve("a.jpg"))).isTrue();
+
+        var escaped = new StringBuilder();
+        NdjsonProgressListener.appendString(escaped, "a\"b\\c\n");
+        assertThat(escaped.toString()).isEqualTo("\"a\\\"b\\\\c\\n\"");
+
+        assertThat(CommandLine.run(new String[]{"--mode", "turbo", dir.toString()}, out,
+                new PrintStream(err, true, StandardCharsets.UTF_8))).isEqualTo(CommandLine.EXIT_USAGE);
+        assertThat(CommandLine.run(new String[]{dir.resolve("missing").toString()}, out,
+                new PrintStream(err, true, StandardCharsets.UTF_8))).isEqualTo(CommandLine.EXIT_FAILURE);
+    }
+
+    @Test
+    void testInstrumentedRunReportsStages(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        Files.copy(source, dir.resolve("a.jpg"));
+        Files.copy(source, dir.resolve("b.jpg"));
+
+        var service = new FileRenameService();
+        var reported = new ConcurrentLinkedQueue<MetricsSnapshot>();
+        service.renamePhotos(RenameConfig.builder().targetFolder(dir).instrumented(true).build(), new TestListener() {
+            @Override
+            public void onMetrics(MetricsSnapshot metrics) {
+                reported.add(metrics);
+            }
+        });
+        service.shutdown();
+
+        // Каждый этап замерен для каждого файла
+        assertThat(reported).hasSize(1);
+        assertThat(reported.peek().getStages())
+                .allSatisfy(stage -> assertThat(stage.getCount()).isEqualTo(2))
+                .allSatisfy(stage -> assertThat(stage.getP99Micros()).isPositive());
+
+        // Без замеров и без записи JFR файл не получает своего трассировщика
+        var metrics = new PipelineMetrics();
+        metrics.start(false);
+        assertThat(metrics.trace(dir.resolve("a.jpg"))).isSameAs(FileTrace.DISABLED);
+
+        // Перцентили точны до ширины корзины гистограммы
+        var histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertThat(histogram.percentile(0.5)).isCloseTo(500_000, withinPercentage(7));
+        assertThat(histogram.percentile(0.99)).isCloseTo(990_000, withinPercentage(7));
+    }
+
+    @Test
+    void testJournalUndoAndResume(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        for (var name : List.of("a.jpg", "b.jpg", "c.jpg")) {
+            Files.copy(source, dir.resolve(name));
+        }
+        var journalFile = dir.resolve("run.journal");
+        var config = RenameConfig.builder().targetFolder(dir).journalFile(journalFile).build();
+        var base = "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50";
+
+        var service = new FileRenameService();
+        service.renamePhotos(config, new TestListener());
+
+        // Каждое переименование записано в журнал до перемещения
+        var journal = RenameJournal.read(journalFile);
+        assertThat(journal.isComplete()).isTrue();
+        assertThat(journal.getEntries()).hasSize(3).allMatch(RenameJournal.Entry::isDone);
+
+        service.undo(journalFile, new TestListener());
+        assertThat(listNames(dir)).containsExactlyInAnyOrder("a.jpg", "b.jpg", "c.jpg");
+        assertThat(journalFile).doesNotExist();
+
+        // Сбой посреди запуска: a.jpg уже перемещён, но без отметки, b.jpg ещё нет
+        try (var crashed = RenameJournal.create(journalFile, config)) {
+            var a = dir.resolve("a.jpg");
+            var renamedA = dir.resolve(base + ".jpg");
+            crashed.begin(a, renamedA, Files.readAttributes(a, BasicFileAttributes.class));
+            Files.move(a, renamedA);
+            var b = dir.resolve("b.jpg");
+            crashed.begin(b, dir.resolve(base + "_1.jpg"), Files.readAttributes(b, BasicFileAttributes.class));
+        }
+        assertThat(RenameJournal.read(journalFile).isComplete()).isFalse();
+
+        var skipped = new ConcurrentLinkedQueue<String>();
+        service.resume(journalFile, RenameConfig.builder().build(), new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                if (result.getStatus() == RenameResult.Status.SKIPPED) {
+                    skipped.add(result.getOriginalName());
+                }
+            }
+        });
+        assertThat(skipped).containsExactly(base + ".jpg");
+        assertThat(listNames(dir)).containsExactlyInAnyOrder(
+                "run.journal", base + ".jpg", base + "_1.jpg", base + "_2.jpg");
+
+        // Отмена возвращает и то, что было сделано до сбоя
+        journal = RenameJournal.read(journalFile);
+        assertThat(journal.isComplete()).isTrue();
+        assertThat(journal.getEntries()).hasSize(3);
+        service.undo(journalFile, new TestListener());
+        assertThat(listNames(dir)).containsExactlyInAnyOrder("a.jpg", "b.jpg", "c.jpg");
+        service.shutdown();
+    }
+
+    @Test
+    void testJournalHandsMovesBackOnceDurable(@TempDir Path dir) throws Exception {
+        var file = Files.writeString(dir.resolve("a.jpg"), "photo");
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        var journalFile = dir.resolve("run.journal");
+        var durableIds = new ConcurrentLinkedQueue<Long>();
+        var seenOnDisk = new ConcurrentLinkedQueue<Integer>();
+
+        // Один поток ставит записи без ожидания; к моменту вызова запись уже на диске
+        try (var journal = RenameJournal.create(journalFile, RenameConfig.builder().targetFolder(dir).build())) {
+            for (int i = 0; i < 200; i++) {
+                journal.begin(file, dir.resolve(i + ".jpg"), attributes, (id, error) -> {
+                    assertThat(error).isNull();
+                    try {
+                        seenOnDisk.add(RenameJournal.read(journalFile).getEntries().size());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    durableIds.add(id);
+                    journal.done(id);
+                });
+            }
+        }
+
+        // close() дожидается всех переданных перемещений, по порядку
+        assertThat(durableIds).containsExactlyElementsOf(LongStream.range(0, 200).boxed().toList());
+        var ids = durableIds.stream().toList();
+        var sizes = seenOnDisk.stream().toList();
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat(sizes.get(i)).isGreaterThan(ids.get(i).intValue());
+        }
+        assertThat(RenameJournal.read(journalFile).getEntries()).hasSize(200).allMatch(RenameJournal.Entry::isDone);
+    }
+
+    @Test
+    void testJournaledMovesRunConcurrently(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var photos = Files.createDirectory(dir.resolve("photos"));
+        for (int i = 0; i < 16; i++) {
+            Files.copy(source, photos.resolve(i + ".jpg"));
+        }
+        var journalFile = dir.resolve("run.journal");
+
+        // Медленное перемещение, как на сетевом диске: считаем, сколько идет одновременно
+        var moving = new AtomicInteger();
+        var maxMoving = new AtomicInteger();
+        var service = new FileRenameService(new ExifMetadataService() {
+            @Override
+            void onRenamed(Path from, Path to) {
+                maxMoving.accumulateAndGet(moving.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    moving.decrementAndGet();
+                }
+                super.onRenamed(from, to);
+            }
+        });
+        var config = RenameConfig.builder()
+                .targetFolder(photos)
+                .journalFile(journalFile)
+                .executionMode(ExecutionMode.VIRTUAL_THREADS)
+                .maxConcurrency(8)
+                .build();
+
+        service.renamePhotos(config, new TestListener());
+
+        assertThat(service.getStatistics().getRenamed()).isEqualTo(16);
+        assertThat(maxMoving.get()).isGreaterThan(1);
+        var journal = RenameJournal.read(journalFile);
+        assertThat(journal.isComplete()).isTrue();
+        assertThat(journal.getEntries()).hasSize(16).allMatch(RenameJournal.Entry::isDone);
+        service.shutdown();
+    }
+
+    @Test
+    void testJournalEntryWhenBothNamesExist(@TempDir Path dir) throws Exception {
+        var lower = Files.writeString(dir.resolve("img_1.jpg"), "photo");
+        var upper = dir.resolve("IMG_1.jpg");
+        var entry = new RenameJournal.Entry(0, lower, upper, 5, 0, false);
+        assertThat(entry.isMoved()).isFalse();
+
+        // Как на томе без учёта регистра: оба имени ведут к одному файлу
+        Files.createLink(upper, lower);
+        assertThat(entry.isMoved()).isTrue();
+
+        // Два разных файла: перемещения не было
+        Files.delete(upper);
+        Files.writeString(upper, "other");
+        assertThat(entry.isMoved()).isFalse();
+    }
+
+    private static List<String> listNames(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).toList();
+        }
+    }
+
+    @Test
+    void testJobCanBePausedAndCancelled(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var photos = Files.createDirectory(dir.resolve("photos"));
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            Files.copy(source, photos.resolve("IMG_" + i + ".jpg"));
+        }
+        var journalFile = dir.resolve("run.journal");
+        var config = RenameConfig.builder().targetFolder(photos).journalFile(journalFile).build();
+
+        var service = new FileRenameService();
+        var started = new CountDownLatch(1);
+        var job = service.start(config, new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                started.countDown();
+            }
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // На паузе файлы в работе дописываются, новые не начинаются
+        job.pause();
+        int processed;
+        do {
+            processed = job.getProcessed();
+            Thread.sleep(100);
+        } while (job.getProcessed() != processed);
+        assertThat(job.isPaused()).isTrue();
+        assertThat(processed).isLessThan(count);
+
+        job.cancel();
+        assertThat(job.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(job.getProcessed()).isEqualTo(processed);
+        assertThat(job.getFailure()).isNull();
+
+        // Ни один файл не остался наполовину обработанным
+        var base = "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50";
+        assertThat(listNames(photos)).hasSize(count)
+                .filteredOn(name -> name.startsWith(base)).hasSize(job.getRenamed());
+        assertThat(RenameJournal.read(journalFile).isComplete()).isFalse();
+
+        // Остановленный запуск продолжается по журналу
+        var resumed = service.startResume(journalFile, RenameConfig.builder().build(), new TestListener());
+        assertThat(resumed.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(resumed.getSkipped()).isEqualTo(job.getRenamed());
+        assertThat(listNames(photos)).hasSize(count).allMatch(name -> name.startsWith(base));
+        service.shutdown();
+    }
+
+    @Test
+    void testDirectoryWalkerFindsSupportedFiles(@TempDir Path dir) throws Exception {
+        var nested = Files.createDirectories(dir.resolve("2025/10/day.jpg"));
+        Files.createFile(dir.resolve("a.JPG"));
+        Files.createFile(dir.resolve("b.xmp"));
+        Files.createFile(dir.resolve("jpg"));
+        Files.createFile(nested.resolve("c.heic"));
+        Files.createFile(nested.resolve("noext"));
+
+        // Расширение сравнивается без учёта регистра, папка с «расширением» не файл
+        var found = new ConcurrentLinkedQueue<String>();
+        DirectoryWalker.walk(dir, Integer.MAX_VALUE, (file, attributes) -> {
+            assertThat(attributes.isRegularFile()).isTrue();
+            found.add(dir.relativize(file).toString().replace('\\', '/'));
+            return true;
+        });
+        assertThat(found).containsExactlyInAnyOrder("a.JPG", "2025/10/day.jpg/c.heic");
+
+        found.clear();
+        DirectoryWalker.walk(dir, 1, (file, attributes) -> found.add(file.getFileName().toString()));
+        assertThat(found).containsExactly("a.JPG");
+
+        assertThat(DirectoryWalker.isSupportedImageFile(Path.of("x.tiff"))).isTrue();
+        assertThat(DirectoryWalker.isSupportedImageFile(Path.of("x.tiff.bak"))).isFalse();
+        assertThat(DirectoryWalker.isSupportedImageFile(Path.of("x.jp"))).isFalse();
+    }
+
+    @Test
+    void testStreamingKeepsFilesInFlightBounded(@TempDir Path dir) throws Exception {
+        var photos = Files.createDirectory(dir.resolve("photos"));
+        int count = 2100;
+        for (int i = 0; i < count; i++) {
+            var folder = Files.createDirectories(photos.resolve("d" + i % 70));
+            Files.writeString(folder.resolve(i + ".jpg"), "not a photo");
+        }
+        var other = Files.createDirectory(dir.resolve("other"));
+        Files.writeString(other.resolve("x.jpg"), "not a photo");
+
+        // Разбор стоит, пока тест его не отпустит
+        var release = new CountDownLatch(1);
+        var service = new FileRenameService(new ExifMetadataService() {
+            @Override
+            public PhotoMetadata extractMetadata(Path file, ExtractionMode mode) {
+                awaitQuietly(release);
+                return super.extractMetadata(file, mode);
+            }
+        });
+        var events = new ConcurrentLinkedQueue<String>();
+        var progress = new AtomicInteger();
+        var firstTotal = new CountDownLatch(1);
+        var config = RenameConfig.builder().targetFolder(photos).recursive(true).streaming(true).build();
+        var job = service.start(config, new TestListener() {
+            @Override
+            public void onStart(int totalFiles) {
+                events.add("start " + totalFiles);
+            }
+
+            @Override
+            public void onProgress(RenameResult result) {
+                progress.incrementAndGet();
+            }
+
+            @Override
+            public void onTotalUpdated(int discoveredFiles, boolean walkComplete) {
+                events.add("total " + discoveredFiles + " " + walkComplete);
+                firstTotal.countDown();
+            }
+
+            @Override
+            public void onComplete(int renamed, int skipped, int errors) {
+                events.add("complete");
+            }
+        });
+
+        // Обход упирается в предел файлов в работе и дальше 1000 найденных не уходит
+        assertThat(firstTotal.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(500);
+        assertThat(FileRenameService.STREAMING_IN_FLIGHT_LIMIT).isLessThan(2000);
+        assertThat(events).containsExactly("start -1", "total 1000 false");
+        assertThat(progress).hasValue(0);
+
+        // Застрявший обход не мешает другим обходам в той же JVM
+        var found = new ConcurrentLinkedQueue<Path>();
+        CompletableFuture.runAsync(() -> DirectoryWalker.walk(other, 1, (file, attributes) -> found.add(file)))
+                .get(10, TimeUnit.SECONDS);
+        assertThat(found).hasSize(1);
+
+        release.countDown();
+        assertThat(job.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(progress).hasValue(count);
+        assertThat(events).containsExactly("start -1", "total 1000 false", "total 2000 false",
+                "total " + count + " true", "complete");
+        service.shutdown();
+    }
+
+    @Test
+    void testLocalitySchedulingKeepsDirectoriesTogether(@TempDir Path dir) throws Exception {
+        var scheduler = new LocalityScheduler(1);
+        var gate = new CountDownLatch(1);
+        var done = new CountDownLatch(7);
+        var order = new ConcurrentLinkedQueue<String>();
+
+        // Пока единственный поток занят, файлы двух папок приходят вперемешку
+        scheduler.execute(Path.of("gate", "0.jpg"), () -> {
+            awaitQuietly(gate);
+            done.countDown();
+        });
+        for (int i = 0; i < 3; i++) {
+            for (var folder : List.of("a", "b")) {
+                var name = folder + i;
+                scheduler.execute(Path.of(folder, i + ".jpg"), () -> {
+                    order.add(name);
+                    done.countDown();
+                });
+            }
+        }
+        gate.countDown();
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        scheduler.shutdown();
+        assertThat(order).containsExactly("a0", "a1", "a2", "b0", "b1", "b2");
+
+        // Внутри папки файлы идут по номерам inode
+        for (var name : List.of("c.jpg", "a.jpg", "e.jpg", "b.jpg", "d.jpg")) {
+            Files.createFile(dir.resolve(name));
+        }
+        var inodes = new ConcurrentLinkedQueue<Long>();
+        DirectoryWalker.walk(dir, 1, true, (file, attributes) -> inodes.add(DirectoryWalker.inode(attributes)));
+        assertThat(List.copyOf(inodes)).hasSize(5).isSorted();
+        if (dir.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            var file = dir.resolve("c.jpg");
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            assertThat(DirectoryWalker.inode(attributes)).isEqualTo(Files.getAttribute(file, "unix:ino"));
+        }
+    }
+
+    @Test
+    void testAdaptiveLimitSurvivesShortLatencySpike() {
+        // Исполнитель под управлением теста: задача сообщает, сколько «ждала» хранилище
+        var running = new ArrayDeque<Runnable>();
+        var limiter = new AdaptiveLimiter("test", 64, running::add);
+        var millis = TimeUnit.MILLISECONDS.toNanos(1);
+
+        runLimited(limiter, running, 1000, millis);
+        int before = limiter.snapshot().getLimit();
+        assertThat(before).isGreaterThan(20);
+
+        // Короткий всплеск: 30 медленных задач, потом снова быстрые
+        runLimited(limiter, running, 30, 50 * millis);
+        runLimited(limiter, running, 200, millis);
+        assertThat(limiter.snapshot().getLimit()).isGreaterThanOrEqualTo((int) (before * 0.8));
+
+        // Задачи без обращений к хранилищу (например, попадания в кэш) предел не трогают
+        int settled = limiter.snapshot().getLimit();
+        runLimited(limiter, running, 500, 0);
+        assertThat(limiter.snapshot().getLimit()).isEqualTo(settled);
+
+        // Устойчивое замедление по-прежнему снижает предел
+        runLimited(limiter, running, 500, 50 * millis);
+        assertThat(limiter.snapshot().getLimit()).isLessThan(before / 2);
+    }
+
+    private static void runLimited(AdaptiveLimiter limiter, ArrayDeque<Runnable> running, int tasks,
+                                   long storageNanos) {
+        for (int i = 0; i < tasks; i++) {
+            limiter.submit(() -> StorageTimer.add(storageNanos));
+        }
+        while (!running.isEmpty()) {
+            running.poll().run();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testFolderWatcherRenamesOnlyNewSettledFiles(@TempDir Path dir) throws Exception {
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        byte[] photo = Files.readAllBytes(source);
+        Files.write(dir.resolve("old.jpg"), photo);
+
+        var results = new ConcurrentLinkedQueue<RenameResult>();
+        var service = new FileRenameService();
+        var config = RenameConfig.builder().targetFolder(dir).recursive(true).build();
+        var watcher = new FolderWatcher(service, config, new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                results.add(result);
+            }
+        }, 300);
+        var thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        thread.start();
+        try {
+            // Файл, который не прочитать (ссылка на саму себя), не останавливает наблюдение
+            try {
+                Files.createSymbolicLink(dir.resolve("loop.jpg"), dir.resolve("loop.jpg"));
+            } catch (UnsupportedOperationException | IOException e) {
+                // Нет символических ссылок
+            }
+            // Файл копируется в два приёма: до конца копирования его не трогают
+            var copying = dir.resolve("IMG_1.jpg");
+            Files.write(copying, Arrays.copyOf(photo, photo.length / 2));
+            Thread.sleep(150);
+            Files.write(copying, photo);
+            // Новая подпапка вместе с файлом
+            Files.createDirectory(dir.resolve("day2"));
+            Files.write(dir.resolve("day2").resolve("IMG_2.jpg"), photo);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (results.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            // Переименованные самим сервисом файлы не обрабатываются повторно
+            Thread.sleep(1000);
+        } finally {
+            watcher.close();
+            thread.join(5000);
+            service.shutdown();
+        }
+
+        var target = "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50.jpg";
+        assertThat(results).extracting(RenameResult::getStatus, RenameResult::getOriginalName)
+                .containsExactlyInAnyOrder(
+                        tuple(RenameResult.Status.SUCCESS, "IMG_1.jpg"),
+                        tuple(RenameResult.Status.SUCCESS, "IMG_2.jpg"));
+        assertThat(listNames(dir)).contains("old.jpg", target);
+        assertThat(listNames(dir.resolve("day2"))).containsExactly(target);
+        assertThat(thread.isAlive()).isFalse();
+    }
+
+    @Test
+    void testSkipMatchingNamesWithoutReading(@TempDir Path dir) throws Exception {
+        var template = FilenameTemplate.DEFAULT;
+        assertThat(template.matches("20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50.jpg")).isTrue();
+        assertThat(template.matches("20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50_2.jpg")).isTrue();
+        assertThat(template.matches("20251023_104114_Canon EOS R5_8s.CR2")).isTrue();
+        // Так называют исходные снимки многие телефоны: без необязательных групп имя ничего не говорит
+        assertThat(template.matches("20251023_104114.jpg")).isFalse();
+        assertThat(template.matches("20251023_104114_1.jpg")).isFalse();
+        assertThat(template.matches("IMG20251023104114_res.jpg")).isFalse();
+        assertThat(template.matches("IMG_0001.JPG")).isFalse();
+        assertThat(template.matches("2025-10-23 10.41.14.jpg")).isFalse();
+
+        var custom = FilenameTemplate.compile("{date:yyyy-MM-dd}[_{model}] \\(ISO{iso}\\)");
+        assertThat(custom.matches("2025-10-23_Canon EOS R5 (ISO100).jpg")).isTrue();
+        assertThat(custom.matches("2025-10-23_Canon EOS R5 (ISO100)_1.tif")).isTrue();
+        assertThat(custom.matches("2025-10-23 (ISO100)_1.tif")).isFalse();
+        assertThat(FilenameTemplate.compile("{date}_{iso}").matches("20251023_104114_100.jpg")).isTrue();
+        assertThat(custom.matches("2025-10-23_Canon EOS R5.jpg")).isFalse();
+        assertThat(FilenameTemplate.compile("{date:d MMMM yyyy}").matches("3 October 2025.jpg")).isTrue();
+
+        var source = Path.of(Objects.requireNonNull(
+                getClass().getClassLoader().getResource(testFileName)
+        ).toURI());
+        var target = "20251023_104114_OPPO Find X9 Pro_140_mm_F2.1_1-364_ISO50.jpg";
+        Files.copy(source, dir.resolve(target));
+        // Имя подходит под шаблон, но дата в нём устарела
+        Files.copy(source, dir.resolve("20200101_000000_Canon EOS R5.jpg"));
+        Files.copy(source, dir.resolve("IMG_1.jpg"));
+        Files.copy(source, dir.resolve("20251023_104114_1.jpg"));
+
+        var reads = new AtomicInteger();
+        var service = new FileRenameService(countingService(null, reads));
+        var config = RenameConfig.builder()
+                .targetFolder(dir)
+                .dryRun(true)
+                .skipMatchingNames(true)
+                .verifyEvery(0)
+                .build();
+        try {
+            // Без проверки читаются только файлы с чужими и исходными камерными именами
+            service.renamePhotos(config, new TestListener());
+            assertThat(reads.get()).isEqualTo(2);
+            assertThat(service.getStatistics().getSkipped()).isEqualTo(2);
+
+            // Проверка каждого подходящего файла находит устаревшее имя
+            reads.set(0);
+            var renamed = new ConcurrentLinkedQueue<String>();
+            service.renamePhotos(config.toBuilder().verifyEvery(1).build(), new TestListener() {
+                @Override
+                public void onProgress(RenameResult result) {
+                    if (result.getStatus() == RenameResult.Status.SUCCESS
+                            && !result.getNewName().equals(result.getOriginalName())) {
+                        renamed.add(result.getOriginalName());
+                    }
+                }
+            });
+            assertThat(reads.get()).isEqualTo(4);
+            assertThat(renamed).containsExactlyInAnyOrder(
+                    "20200101_000000_Canon EOS R5.jpg", "IMG_1.jpg", "20251023_104114_1.jpg");
+
+            // Выключено по умолчанию
+            reads.set(0);
+            service.renamePhotos(config.toBuilder().skipMatchingNames(false).build(), new TestListener());
+            assertThat(reads.get()).isEqualTo(4);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void testCorpusRenameAtScale(@TempDir Path dir) throws Exception {
+        // Размер и нижнюю границу скорости можно поднять: -Dcorpus.files=1000000
+        int count = Integer.getInteger("corpus.files", 3000);
+        double minFilesPerSecond = Double.parseDouble(System.getProperty("corpus.minFilesPerSecond", "200"));
+        var photos = CorpusGenerator.generate(dir, CorpusGenerator.Spec.builder()
+                .files(count)
+                .depth(3)
+                .fanOut(4)
+                .burstSize(20)
+                .build());
+
+        var expectedDates = new HashMap<String, Integer>();
+        var undated = new HashSet<Path>();
+        for (var photo : photos) {
+            if (photo.getCaptureTime() == null) {
+                undated.add(photo.getFile());
+            } else {
+                expectedDates.merge(DATE_PREFIX.format(photo.getCaptureTime()), 1, Integer::sum);
+            }
+        }
+        assertThat(undated).isNotEmpty();
+        var filesPerFolder = countFilesPerFolder(dir);
+
+        var service = new FileRenameService();
+        var config = RenameConfig.builder()
+                .targetFolder(dir)
+                .recursive(true)
+                .executionMode(ExecutionMode.VIRTUAL_THREADS);
+
+        // Сухой запуск: каждый файл с датой получает своё имя, остальные пропускаются
+        var planned = new ConcurrentLinkedQueue<Path>();
+        service.renamePhotos(config.dryRun(true).build(), new TestListener() {
+            @Override
+            public void onProgress(RenameResult result) {
+                if (result.getStatus() == RenameResult.Status.SUCCESS) {
+                    planned.add(Path.of(result.getNewName()));
+                }
+            }
+        });
+        assertThat(planned).hasSize(count - undated.size());
+        assertThat(service.getStatistics().getErrors()).isZero();
+        assertThat(countFilesPerFolder(dir)).isEqualTo(filesPerFolder);
+
+        long started = System.nanoTime();
+        service.renamePhotos(config.dryRun(false).extractionMode(ExtractionMode.FAST).build(), new TestListener());
+        double filesPerSecond = count / ((System.nanoTime() - started) / 1e9);
+        assertThat(service.getStatistics().getRenamed()).isEqualTo(count - undated.size());
+        assertThat(service.getStatistics().getErrors()).isZero();
+        service.shutdown();
+
+        // Ни один файл не потерян и не перезаписан, в каждой папке столько же файлов
+        assertThat(countFilesPerFolder(dir)).isEqualTo(filesPerFolder);
+        var actualDates = new HashMap<String, Integer>();
+        try (var files = Files.walk(dir)) {
+            for (var file : files.filter(Files::isRegularFile).toList()) {
+                if (undated.contains(file)) {
+                    continue;
+                }
+                actualDates.merge(file.getFileName().toString().substring(0, 15), 1, Integer::sum);
+            }
+        }
+        assertThat(actualDates).isEqualTo(expectedDates);
+        assertThat(undated).allMatch(Files::exists);
+
+        assertThat(filesPerSecond).isGreaterThanOrEqualTo(minFilesPerSecond);
+    }
+
+    private static Map<Path, Long> countFilesPerFolder(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .collect(Collectors.groupingBy(Path::getParent, Collectors.counting()));
+        }
+    }
+
+    @Test
+    void testLogKeepsNewestLines() {
+        var log = new LogListModel(3);
+        var events = new AtomicInteger();
+        log.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.incrementAndGet();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.incrementAndGet();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.incrementAndGet();
+            }
+        });
+
+        // Строки копятся до следующего тика и передаются в список одной пачкой
+        log.add("1");
+        log.add("2");
+        assertThat(log.getSize()).isZero();
+        assertThat(log.flush()).containsExactly("1", "2");
+        assertThat(events).hasValue(1);
+
+        for (int i = 3; i <= 10; i++) {
+            log.add(String.valueOf(i));
+        }
+        log.flush();
+        assertThat(log.getSize()).isEqualTo(3);
+        assertThat(List.of(log.getElementAt(0), log.getElementAt(1), log.getElementAt(2)))
+                .containsExactly("8", "9", "10");
+
+        var meter = new ProgressMeter();
+        meter.start(0);
+        meter.setTotal(300, true);
+        for (int i = 0; i < 100; i++) {
+            meter.fileDone();
+        }
+        meter.sample(1_000_000_000L);
+        assertThat(meter.getFilesPerSecond()).isEqualTo(100.0);
+        assertThat(meter.getSecondsLeft()).isEqualTo(2);
+        assertThat(ProgressMeter.formatDuration(3725)).isEqualTo("1:02:05");
+    }
+
+    private static class TestListener implements ProgressListener {
+        @Override
+        public void onStart(int totalFiles) {
+        }
+
+        @Override
+        public void onProgress(RenameResult result) {
+        }
+
+        @Override
+        public void onComplete(int renamed, int skipped, int errors) {
+        }
+    }
+
+    private ExifMetadataService countingService(MetadataCache cache, AtomicInteger reads) {
+        return new ExifMetadataService(cache) {
+            @Override
+            Metadata readMetadata(Path file) throws ImageProcessingException, IOException {
+                reads.incrementAndGet();
+                return super.readMetadata(file);
+            }
+        };
+    }
+
+}